@@ -0,0 +1,95 @@
+package plus.maa.backend.common.utils;
+
+import cn.hutool.dfa.WordTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 敏感词匹配性能对比：Hutool WordTree 与 SensitiveWordMatcher <br>
+ * 运行方式：./gradlew jmh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SensitiveWordMatcherBenchmark {
+
+    // 待检测文本长度，分别对应评论与较长的作业描述
+    @Param({"200", "5000"})
+    int length;
+
+    // 文本中是否混入敏感词
+    @Param({"false", "true"})
+    boolean dirty;
+
+    private WordTree wordTree;
+    private SensitiveWordMatcher matcher;
+    private String text;
+
+    @Setup
+    public void setup() throws IOException {
+        List<String> words;
+        try (InputStream in = Objects.requireNonNull(getClass().getResourceAsStream("/sensitive-word.txt"));
+             BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            words = reader.lines().toList();
+        }
+        wordTree = new WordTree();
+        wordTree.addWords(words);
+        matcher = SensitiveWordMatcher.build(words);
+
+        Random random = new Random(42);
+        StringBuilder builder = new StringBuilder(length);
+        while (builder.length() < length) {
+            // 常用汉字区间内的随机文本，夹杂空格与标点
+            builder.append((char) (0x4E00 + random.nextInt(0x5000)));
+            if (random.nextInt(10) == 0) {
+                builder.append(random.nextBoolean() ? ' ' : '，');
+            }
+            if (dirty && random.nextInt(length) == 0) {
+                builder.append(words.get(random.nextInt(words.size())));
+            }
+        }
+        text = builder.toString();
+    }
+
+    @Benchmark
+    public List<String> wordTreeMatchAll() {
+        return wordTree.matchAll(text);
+    }
+
+    @Benchmark
+    public List<String> matcherMatchAll() {
+        return matcher.matchAll(text);
+    }
+
+    @Benchmark
+    public boolean wordTreeIsMatch() {
+        return wordTree.isMatch(text);
+    }
+
+    @Benchmark
+    public boolean matcherContainsAny() {
+        return matcher.containsAny(text);
+    }
+}
@@ -1,11 +1,9 @@
 package plus.maa.backend.common.aop;
 
-import cn.hutool.dfa.WordTree;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.aspectj.lang.JoinPoint;
-import org.aspectj.lang.Signature;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Before;
 import org.aspectj.lang.reflect.MethodSignature;
@@ -13,14 +11,21 @@ import org.jetbrains.annotations.Nullable;
 import org.springframework.core.DefaultParameterNameDiscoverer;
 import org.springframework.expression.EvaluationContext;
 import org.springframework.expression.Expression;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.expression.spel.support.StandardEvaluationContext;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import plus.maa.backend.common.annotation.SensitiveWordDetection;
 import plus.maa.backend.controller.response.MaaResultException;
+import plus.maa.backend.service.SensitiveWordService;
 
+import java.lang.reflect.Method;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 敏感词处理程序 <br>
@@ -36,53 +41,65 @@ import java.util.List;
 public class SensitiveWordAop {
 
     // 敏感词库
-    private final WordTree wordTree;
+    private final SensitiveWordService sensitiveWordService;
 
     private final ObjectMapper objectMapper;
 
-    // SpEL 表达式解析器
-    private final SpelExpressionParser parser = new SpelExpressionParser();
+    // SpEL 表达式解析器，MIXED 模式下多次执行后会被编译为字节码
+    private final SpelExpressionParser parser = new SpelExpressionParser(
+            new SpelParserConfiguration(SpelCompilerMode.MIXED, getClass().getClassLoader()));
 
     // 用于获取方法参数名
     private final DefaultParameterNameDiscoverer nameDiscoverer = new DefaultParameterNameDiscoverer();
 
-    @Nullable
-    public Object getObjectBySpEL(String spELString, JoinPoint joinPoint) {
-        // 获取被注解方法
-        Signature signature = joinPoint.getSignature();
-        if (!(signature instanceof MethodSignature methodSignature)) {
-            return null;
-        }
-        // 获取方法参数名数组
-        String[] paramNames = nameDiscoverer.getParameterNames(methodSignature.getMethod());
-        // 解析 Spring 表达式对象
-        Expression expression = parser.parseExpression(spELString);
-        // Spring 表达式上下文对象
+    // 每个被注解方法解析后的表达式与参数名，注解内容在运行期不会变化，只需解析一次
+    private final Map<Method, DetectionMetadata> metadataCache = new ConcurrentHashMap<>();
+
+    private record DetectionMetadata(Expression[] expressions, @Nullable String[] paramNames) {
+    }
+
+    private DetectionMetadata resolveMetadata(Method method, SensitiveWordDetection annotation) {
+        return metadataCache.computeIfAbsent(method, m -> new DetectionMetadata(
+                Arrays.stream(annotation.value())
+                        .map(parser::parseExpression)
+                        .toArray(Expression[]::new),
+                nameDiscoverer.getParameterNames(m)));
+    }
+
+    private EvaluationContext createContext(DetectionMetadata metadata, JoinPoint joinPoint) {
+        // Spring 表达式上下文对象，持有本次调用的参数，无法复用
         EvaluationContext context = new StandardEvaluationContext();
         // 通过 joinPoint 获取被注解方法的参数
         Object[] args = joinPoint.getArgs();
+        String[] paramNames = metadata.paramNames();
         // 给上下文赋值
-        for (int i = 0; i < args.length; i++) {
-            if (paramNames != null) {
+        if (paramNames != null) {
+            for (int i = 0; i < args.length; i++) {
                 context.setVariable(paramNames[i], args[i]);
             }
         }
         context.setVariable("objectMapper", objectMapper);
-        // 表达式从上下文中计算出实际参数值
-        return expression.getValue(context);
+        return context;
     }
 
     @Before("@annotation(annotation)")  // 处理 SensitiveWordDetection 注解
     public void before(JoinPoint joinPoint, SensitiveWordDetection annotation) {
-        // 获取 SpEL 表达式
-        String[] expressions = annotation.value();
-        for (String expression : expressions) {
-            // 解析 SpEL 表达式
-            Object value = getObjectBySpEL(expression, joinPoint);
+        // 获取被注解方法
+        if (!(joinPoint.getSignature() instanceof MethodSignature methodSignature)) {
+            return;
+        }
+        DetectionMetadata metadata = resolveMetadata(methodSignature.getMethod(), annotation);
+        if (metadata.expressions().length == 0) {
+            return;
+        }
+        EvaluationContext context = createContext(metadata, joinPoint);
+        for (Expression expression : metadata.expressions()) {
+            // 表达式从上下文中计算出实际参数值
+            Object value = expression.getValue(context);
             // 校验
             if (value instanceof String text) {
-                List<String> matchAll = wordTree.matchAll(text);
-                if (matchAll != null && !matchAll.isEmpty()) {
+                List<String> matchAll = sensitiveWordService.matchAll(text);
+                if (!matchAll.isEmpty()) {
                     throw new MaaResultException(HttpStatus.BAD_REQUEST.value(), "包含敏感词：" + matchAll);
                 }
             }
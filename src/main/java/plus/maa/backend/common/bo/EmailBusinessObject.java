@@ -31,9 +31,12 @@ public class EmailBusinessObject {
 
     private static final String DEFAULT_TITLE_PREFIX = "Maa Backend Center";
 
-    //发件人信息
+    //发件人信息，仅在未设置 sender 或带附件时直接发送使用
     private MailAccount mailAccount;
 
+    // 渲染完成后的邮件交给 sender 投递，例如写入发件箱
+    private Sender sender;
+
     private List<String> emailList = new ArrayList<>();
 
     // 自定义标题
@@ -146,11 +149,24 @@ public class EmailBusinessObject {
         }
     }
 
+    public void sendCommentNotificationDigest(Map<String, Object> map) {
+        try {
+            send(this.mailAccount,
+                    this.emailList,
+                    this.title,
+                    defaultMailIncludeHtmlTemplates("mail-comment-digest.ftlh", map),
+                    this.isHtml
+            );
+        } catch (Exception ex) {
+            throw new RuntimeException("邮件发送失败", ex);
+        }
+    }
+
     private String defaultMailIncludeHtmlTemplates(String content, String obj) {
         return parseMessages(content, obj, DEFAULT_MAIL_INCLUDE_HTML_TEMPLATE);
     }
 
-    private String defaultMailIncludeHtmlTemplates(String content, Map<String, String> map) {
+    private String defaultMailIncludeHtmlTemplates(String content, Map<String, ? super String> map) {
         return parseMessages(content, DEFAULT_MAIL_INCLUDE_HTML_TEMPLATE, map);
     }
 
@@ -170,7 +186,7 @@ public class EmailBusinessObject {
      * @param content 邮件内嵌ftlh路径
      * @return String
      */
-    private String parseMessages(String content, String templateName, Map<String, String> map) {
+    private String parseMessages(String content, String templateName, Map<String, ? super String> map) {
         map.put("content", content);
         return FreeMarkerUtils.parseData(map, templateName);
     }
@@ -191,6 +207,18 @@ public class EmailBusinessObject {
      * @param files       附件列表
      */
     private void send(MailAccount mailAccount, Collection<String> tos, String subject, String content, boolean isHtml, File... files) {
+        if (sender != null && (files == null || files.length == 0)) {
+            sender.send(tos, subject, content, isHtml);
+            return;
+        }
         MailUtil.send(mailAccount, tos, null, null, subject, content, null, isHtml, files);
     }
+
+    /**
+     * 邮件投递方式
+     */
+    @FunctionalInterface
+    public interface Sender {
+        void send(Collection<String> tos, String subject, String content, boolean isHtml);
+    }
 }
@@ -0,0 +1,103 @@
+package plus.maa.backend.common.utils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 根据延迟自适应调整的并发上限 <br>
+ * 以无排队时的延迟作为基准，短期平均延迟超过基准的 tolerance 倍说明请求开始排队，按比例收缩上限；
+ * 延迟正常时上限按 sqrt(limit) 逐步增长。超过上限的请求直接拒绝，而不是在线程池或数据库连接上排队 <br>
+ * 基准取观测到的最小延迟，并在并发较低时缓慢跟随实际延迟，下游整体变慢后基准随之上移；
+ * 并发接近上限时的延迟可能包含排队，不用于抬高基准，持续过载时基准不会随排队漂移，也无需降低上限重新测量
+ */
+public final class AdaptiveConcurrencyLimiter {
+
+    // 短期均值约为最近 10 个样本
+    private static final double SHORT_SMOOTHING = 0.1;
+    // 基准向低并发样本靠拢的速度，约为最近 500 个样本
+    private static final double BASELINE_SMOOTHING = 0.002;
+    // 每次调整只采纳新上限的 20%，避免抖动
+    private static final double LIMIT_SMOOTHING = 0.2;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile double limit;
+
+    // guarded by this，延迟的单位为纳秒
+    private double shortRtt;
+    private double baselineRtt;
+
+    /**
+     * @param initialLimit 初始并发上限
+     * @param minLimit     并发上限的下限
+     * @param maxLimit     并发上限的上限
+     * @param tolerance    短期延迟达到基准的多少倍时才开始收缩上限
+     */
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double tolerance) {
+        if (minLimit <= 0 || minLimit > maxLimit || tolerance < 1) {
+            throw new IllegalArgumentException("invalid limiter parameters");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * 尝试占用一个并发名额，成功后必须调用 {@link #release(long, int)}
+     *
+     * @return 占用成功时返回占用后的并发数，超过上限时返回 -1
+     */
+    public int tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return -1;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return current + 1;
+            }
+        }
+    }
+
+    /**
+     * 释放名额并以本次请求的延迟调整上限
+     *
+     * @param rttNanos 请求耗时
+     * @param inFlight {@link #tryAcquire()} 返回的并发数
+     */
+    public void release(long rttNanos, int inFlight) {
+        this.inFlight.decrementAndGet();
+        update(rttNanos, inFlight);
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    private synchronized void update(long rttNanos, int inFlight) {
+        shortRtt = shortRtt == 0 ? rttNanos : shortRtt + (rttNanos - shortRtt) * SHORT_SMOOTHING;
+        if (baselineRtt == 0 || rttNanos < baselineRtt) {
+            baselineRtt = rttNanos;
+        } else if (inFlight <= Math.max(minLimit, limit / 2)) {
+            // 并发不到上限一半（或已降到最低）时视为没有排队
+            baselineRtt += (rttNanos - baselineRtt) * BASELINE_SMOOTHING;
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * baselineRtt / shortRtt));
+        // 并发远未达到上限时延迟不能说明容量，不增长上限
+        if (gradient >= 1.0 && inFlight < limit / 2) {
+            return;
+        }
+        double current = limit;
+        double target = current * gradient + Math.sqrt(current);
+        double next = current * (1 - LIMIT_SMOOTHING) + target * LIMIT_SMOOTHING;
+        limit = Math.max(minLimit, Math.min(maxLimit, next));
+    }
+}
@@ -0,0 +1,211 @@
+package plus.maa.backend.common.utils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 滑动窗口的热点统计 <br>
+ * 以 count-min sketch 估计每个 key 在窗口内的出现次数，窗口划分为若干子窗口，每个子窗口一组计数器，
+ * 随时间轮转清空最旧的一组；同时以 space-saving 的方式维护估计值最大的 topK 个 key。
+ * 内存占用只取决于构造参数，与 key 的数量无关，估计值只会偏大不会偏小 <br>
+ * 已在候选中的 key 不加锁，记录的估计值在淘汰和查询时才按计数器刷新；候选已满后，
+ * 估计值不超过候选最小值的 key 也不加锁，只有可能进入候选的 key 才需要同步
+ */
+public final class HeavyHitterSketch {
+
+    private static final Comparator<Entry> BY_COUNT = Comparator.comparingLong(Entry::count)
+            .thenComparing(Entry::key);
+
+    private final int depth;
+    private final int width;
+    private final int slots;
+    private final long slotMillis;
+    private final int topK;
+    private final int seed = ThreadLocalRandom.current().nextInt();
+
+    // [slot][row][column] 平铺
+    private final AtomicIntegerArray counters;
+    // 当前子窗口的序号，即 时间 / slotMillis
+    private volatile long currentEpoch;
+
+    // topK 候选 key -> 记录的估计值，写入 guarded by this，读取不加锁
+    private final Map<String, Long> candidates = new ConcurrentHashMap<>();
+    // 与 candidates 相同的候选，按记录的估计值排序，guarded by this
+    private final TreeSet<Entry> ordered = new TreeSet<>(BY_COUNT);
+    // 候选已满时，估计值需要超过该值才可能进入候选；未满时为 0
+    private volatile long admissionThreshold;
+
+    /**
+     * @param depth        哈希行数，越多误差概率越低
+     * @param width        每行计数器数，越多误差越小
+     * @param windowMillis 统计窗口长度
+     * @param slots        窗口划分的子窗口数
+     * @param topK         维护的热点数量
+     */
+    public HeavyHitterSketch(int depth, int width, long windowMillis, int slots, int topK) {
+        if (depth <= 0 || width <= 0 || slots <= 0 || topK <= 0 || windowMillis < slots) {
+            throw new IllegalArgumentException("invalid sketch parameters");
+        }
+        this.depth = depth;
+        this.width = width;
+        this.slots = slots;
+        this.slotMillis = windowMillis / slots;
+        this.topK = topK;
+        this.counters = new AtomicIntegerArray(slots * depth * width);
+        this.currentEpoch = System.currentTimeMillis() / slotMillis;
+    }
+
+    /**
+     * 记录一次出现
+     *
+     * @return 记录后 key 在窗口内出现次数的估计值
+     */
+    public long add(String key, long nowMillis) {
+        advance(nowMillis);
+        int slotBase = (int) Math.floorMod(currentEpoch, (long) slots) * depth * width;
+        int h1 = mix(key.hashCode() ^ seed);
+        int h2 = mix(h1) | 1;
+        for (int row = 0; row < depth; row++) {
+            counters.incrementAndGet(slotBase + row * width + column(h1, h2, row));
+        }
+        long estimate = estimate(h1, h2);
+        if (estimate > admissionThreshold && !candidates.containsKey(key)) {
+            offer(key, estimate);
+        }
+        return estimate;
+    }
+
+    /**
+     * @return key 在窗口内出现次数的估计值
+     */
+    public long estimate(String key, long nowMillis) {
+        advance(nowMillis);
+        return estimate(key);
+    }
+
+    /**
+     * @return 窗口内出现次数最多的 key，按估计值降序
+     */
+    public synchronized List<Entry> top(long nowMillis) {
+        advance(nowMillis);
+        refreshCandidates();
+        return new ArrayList<>(ordered.descendingSet());
+    }
+
+    public long getSlotMillis() {
+        return slotMillis;
+    }
+
+    private long estimate(int h1, int h2) {
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            int offset = row * width + column(h1, h2, row);
+            long sum = 0;
+            for (int slot = 0; slot < slots; slot++) {
+                sum += counters.get(slot * depth * width + offset);
+            }
+            min = Math.min(min, sum);
+        }
+        return min;
+    }
+
+    private synchronized void offer(String key, long estimate) {
+        if (candidates.containsKey(key)) {
+            return;
+        }
+        if (candidates.size() < topK) {
+            putCandidate(key, estimate);
+        } else {
+            // 记录的估计值可能已过时，淘汰前先刷新最小的候选，直到最小值确实是最新的
+            Entry min = ordered.first();
+            long fresh;
+            while ((fresh = estimate(min.key())) > min.count()) {
+                ordered.remove(min);
+                putCandidate(min.key(), fresh);
+                min = ordered.first();
+            }
+            if (estimate > min.count()) {
+                ordered.remove(min);
+                candidates.remove(min.key());
+                putCandidate(key, estimate);
+            }
+        }
+        updateAdmissionThreshold();
+    }
+
+    private void putCandidate(String key, long count) {
+        candidates.put(key, count);
+        ordered.add(new Entry(key, count));
+    }
+
+    /**
+     * 按当前计数器刷新所有候选的估计值，移除已不在窗口内的候选
+     */
+    private void refreshCandidates() {
+        ordered.clear();
+        candidates.replaceAll((key, count) -> estimate(key));
+        candidates.values().removeIf(count -> count == 0);
+        candidates.forEach((key, count) -> ordered.add(new Entry(key, count)));
+        updateAdmissionThreshold();
+    }
+
+    private void updateAdmissionThreshold() {
+        admissionThreshold = candidates.size() < topK ? 0 : ordered.first().count();
+    }
+
+    long getAdmissionThreshold() {
+        return admissionThreshold;
+    }
+
+    private long estimate(String key) {
+        int h1 = mix(key.hashCode() ^ seed);
+        return estimate(h1, mix(h1) | 1);
+    }
+
+    /**
+     * 进入新的子窗口时清空过期的计数器，并按新窗口重新估计候选
+     */
+    private void advance(long nowMillis) {
+        long epoch = nowMillis / slotMillis;
+        if (epoch <= currentEpoch) {
+            return;
+        }
+        synchronized (this) {
+            long previous = currentEpoch;
+            if (epoch <= previous) {
+                return;
+            }
+            long expired = Math.min(epoch - previous, slots);
+            for (long e = epoch - expired + 1; e <= epoch; e++) {
+                int slotBase = (int) Math.floorMod(e, (long) slots) * depth * width;
+                for (int i = 0; i < depth * width; i++) {
+                    counters.set(slotBase + i, 0);
+                }
+            }
+            currentEpoch = epoch;
+            refreshCandidates();
+        }
+    }
+
+    private int column(int h1, int h2, int row) {
+        return Math.floorMod(h1 + row * h2, width);
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    public record Entry(String key, long count) {
+    }
+}
@@ -0,0 +1,84 @@
+package plus.maa.backend.common.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.extern.slf4j.Slf4j;
+import org.everit.json.schema.Schema;
+import org.everit.json.schema.ValidationException;
+import org.everit.json.schema.loader.SchemaLoader;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import plus.maa.backend.controller.response.MaaResultException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * json schema 校验器 <br>
+ * schema 文件只在首次使用时加载编译一次，之后复用编译结果
+ */
+@Slf4j
+@Component
+public class JsonSchemaValidator {
+
+    public static final String COPILOT_SCHEMA_JSON = "static/templates/maa-copilot-schema.json";
+    public static final String RATING_SCHEMA_JSON = "static/templates/maa-rating-schema.json";
+
+    private final Map<String, Schema> schemas = new ConcurrentHashMap<>();
+
+    /**
+     * 使用指定 schema 校验已解析好的 json 树，不符合规范时抛出 400 异常
+     *
+     * @param schemaPath classpath 下的 schema 路径
+     * @param json       待校验的 json 树
+     */
+    public void validate(String schemaPath, JsonNode json) {
+        Schema schema = schemas.computeIfAbsent(schemaPath, JsonSchemaValidator::loadSchema);
+        try {
+            schema.validate(toJson(json));
+        } catch (ValidationException e) {
+            log.warn("schema Location: {}", e.getViolatedSchema().getSchemaLocation());
+            throw new MaaResultException(HttpStatus.BAD_REQUEST.value(), "数据不符合规范，请前往前端作业编辑器进行操作");
+        }
+    }
+
+    private static Schema loadSchema(String schemaPath) {
+        try (InputStream inputStream = new ClassPathResource(schemaPath).getInputStream()) {
+            return SchemaLoader.load(new JSONObject(new JSONTokener(inputStream)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 将 jackson 的树直接转换为 org.json 对象，避免再次序列化与解析文本
+     */
+    private static Object toJson(JsonNode node) {
+        if (node.isObject()) {
+            JSONObject object = new JSONObject();
+            node.fields().forEachRemaining(field -> object.put(field.getKey(), toJson(field.getValue())));
+            return object;
+        }
+        if (node.isArray()) {
+            JSONArray array = new JSONArray();
+            node.forEach(element -> array.put(toJson(element)));
+            return array;
+        }
+        if (node.isNull() || node.isMissingNode()) {
+            return JSONObject.NULL;
+        }
+        if (node.isNumber()) {
+            return node.numberValue();
+        }
+        if (node.isBoolean()) {
+            return node.booleanValue();
+        }
+        return node.asText();
+    }
+}
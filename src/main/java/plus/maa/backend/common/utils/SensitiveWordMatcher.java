@@ -0,0 +1,226 @@
+package plus.maa.backend.common.utils;
+
+import cn.hutool.dfa.StopChar;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 基于 Aho-Corasick 自动机的敏感词匹配器 <br>
+ * 构建完成后不可变，可被多个线程同时使用；状态转移全部存放在基本类型数组中，
+ * 扫描文本时除命中结果外不产生任何对象分配 <br>
+ * 与 Hutool 的 WordTree 保持一致：词与文本中的停顿字符（空白、标点等）都会被忽略，大小写敏感
+ */
+public final class SensitiveWordMatcher {
+
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+
+    // 状态 i 的出边位于 edgeChars/edgeTargets 的 [edgeStart[i], edgeStart[i + 1]) 区间，按字符升序排列
+    private final int[] edgeStart;
+    private final char[] edgeChars;
+    private final int[] edgeTargets;
+    // 失配指针
+    private final int[] fail;
+    // 以该状态结尾的词下标，没有则为 NONE
+    private final int[] output;
+    // 沿失配指针可以到达的下一个有输出的状态，没有则为 NONE
+    private final int[] outputLink;
+    private final String[] words;
+
+    private SensitiveWordMatcher(int[] edgeStart, char[] edgeChars, int[] edgeTargets,
+                                 int[] fail, int[] output, int[] outputLink, String[] words) {
+        this.edgeStart = edgeStart;
+        this.edgeChars = edgeChars;
+        this.edgeTargets = edgeTargets;
+        this.fail = fail;
+        this.output = output;
+        this.outputLink = outputLink;
+        this.words = words;
+    }
+
+    /**
+     * 构建匹配器，空行与只包含停顿字符的词会被忽略
+     *
+     * @param dictionary 敏感词
+     * @return 匹配器
+     */
+    public static SensitiveWordMatcher build(Iterable<String> dictionary) {
+        List<TreeMap<Character, Integer>> children = new ArrayList<>();
+        List<Integer> outputs = new ArrayList<>();
+        List<String> words = new ArrayList<>();
+        children.add(new TreeMap<>());
+        outputs.add(NONE);
+
+        for (String word : dictionary) {
+            if (word == null) {
+                continue;
+            }
+            int state = ROOT;
+            StringBuilder normalized = new StringBuilder(word.length());
+            for (int i = 0; i < word.length(); i++) {
+                char c = word.charAt(i);
+                if (StopChar.isStopChar(c)) {
+                    continue;
+                }
+                normalized.append(c);
+                Integer next = children.get(state).get(c);
+                if (next == null) {
+                    next = children.size();
+                    children.add(new TreeMap<>());
+                    outputs.add(NONE);
+                    children.get(state).put(c, next);
+                }
+                state = next;
+            }
+            if (state != ROOT && outputs.get(state) == NONE) {
+                outputs.set(state, words.size());
+                words.add(normalized.toString());
+            }
+        }
+
+        int size = children.size();
+        int[] edgeStart = new int[size + 1];
+        int edgeCount = 0;
+        for (int i = 0; i < size; i++) {
+            edgeStart[i] = edgeCount;
+            edgeCount += children.get(i).size();
+        }
+        edgeStart[size] = edgeCount;
+        char[] edgeChars = new char[edgeCount];
+        int[] edgeTargets = new int[edgeCount];
+        for (int i = 0; i < size; i++) {
+            int offset = edgeStart[i];
+            for (Map.Entry<Character, Integer> edge : children.get(i).entrySet()) {
+                edgeChars[offset] = edge.getKey();
+                edgeTargets[offset] = edge.getValue();
+                offset++;
+            }
+        }
+
+        int[] output = new int[size];
+        for (int i = 0; i < size; i++) {
+            output[i] = outputs.get(i);
+        }
+        int[] fail = new int[size];
+        int[] outputLink = new int[size];
+        outputLink[ROOT] = NONE;
+
+        // 按层次遍历计算失配指针，父节点的失配指针总是先于子节点确定
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int e = edgeStart[ROOT]; e < edgeStart[ROOT + 1]; e++) {
+            int child = edgeTargets[e];
+            fail[child] = ROOT;
+            outputLink[child] = NONE;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int e = edgeStart[state]; e < edgeStart[state + 1]; e++) {
+                char c = edgeChars[e];
+                int child = edgeTargets[e];
+                int f = fail[state];
+                int target;
+                while ((target = transition(edgeStart, edgeChars, edgeTargets, f, c)) == NONE && f != ROOT) {
+                    f = fail[f];
+                }
+                fail[child] = target == NONE ? ROOT : target;
+                outputLink[child] = output[fail[child]] != NONE ? fail[child] : outputLink[fail[child]];
+                queue.add(child);
+            }
+        }
+
+        return new SensitiveWordMatcher(edgeStart, edgeChars, edgeTargets, fail, output, outputLink,
+                words.toArray(String[]::new));
+    }
+
+    private static int transition(int[] edgeStart, char[] edgeChars, int[] edgeTargets, int state, char c) {
+        int low = edgeStart[state];
+        int high = edgeStart[state + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char midChar = edgeChars[mid];
+            if (midChar < c) {
+                low = mid + 1;
+            } else if (midChar > c) {
+                high = mid - 1;
+            } else {
+                return edgeTargets[mid];
+            }
+        }
+        return NONE;
+    }
+
+    private int next(int state, char c) {
+        int target;
+        while ((target = transition(edgeStart, edgeChars, edgeTargets, state, c)) == NONE && state != ROOT) {
+            state = fail[state];
+        }
+        return target == NONE ? ROOT : target;
+    }
+
+    /**
+     * 文本中是否包含任意敏感词，找到第一个即返回
+     */
+    public boolean containsAny(CharSequence text) {
+        if (text == null) {
+            return false;
+        }
+        int state = ROOT;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            char c = text.charAt(i);
+            if (StopChar.isStopChar(c)) {
+                continue;
+            }
+            state = next(state, c);
+            if (output[state] != NONE || outputLink[state] != NONE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 找出文本中包含的全部敏感词，按首次出现的顺序去重返回
+     *
+     * @param text 文本
+     * @return 命中的敏感词，未命中时返回空列表
+     */
+    public List<String> matchAll(CharSequence text) {
+        if (text == null) {
+            return Collections.emptyList();
+        }
+        Set<String> matched = null;
+        int state = ROOT;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            char c = text.charAt(i);
+            if (StopChar.isStopChar(c)) {
+                continue;
+            }
+            state = next(state, c);
+            int hit = output[state] != NONE ? state : outputLink[state];
+            while (hit != NONE) {
+                if (matched == null) {
+                    matched = new LinkedHashSet<>();
+                }
+                matched.add(words[output[hit]]);
+                hit = outputLink[hit];
+            }
+        }
+        return matched == null ? Collections.emptyList() : List.copyOf(matched);
+    }
+
+    /**
+     * 词库中的词数
+     */
+    public int size() {
+        return words.length;
+    }
+}
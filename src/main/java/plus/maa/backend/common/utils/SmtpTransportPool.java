@@ -0,0 +1,166 @@
+package plus.maa.backend.common.utils;
+
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Semaphore;
+
+/**
+ * SMTP 连接池 <br>
+ * 每封邮件单独建立连接时，握手和认证的耗时远大于发送本身，突发的通知邮件还可能触发服务器的连接数限制。
+ * 连接池最多保持 maxSize 个已认证的连接，发送时借出、发送后归还；
+ * 空闲过久的连接在借出前重建，复用的连接发送失败时换用新连接重试一次，避免服务器单方面断开的连接导致发送失败
+ */
+public final class SmtpTransportPool implements AutoCloseable {
+
+    private final Session session;
+    private final String host;
+    private final int port;
+    private final String user;
+    private final String pass;
+    private final long idleTimeoutMillis;
+
+    private final Semaphore permits;
+    // guarded by this
+    private final Deque<PooledTransport> idle = new ArrayDeque<>();
+    private boolean closed;
+
+    /**
+     * @param session           包含 SMTP 协议配置的会话
+     * @param maxSize           最多同时保持的连接数
+     * @param idleTimeoutMillis 空闲超过该时长的连接不再复用
+     */
+    public SmtpTransportPool(Session session, String host, int port, String user, String pass,
+                             int maxSize, long idleTimeoutMillis) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("invalid pool size");
+        }
+        this.session = session;
+        this.host = host;
+        this.port = port;
+        this.user = user;
+        this.pass = pass;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.permits = new Semaphore(maxSize);
+    }
+
+    public MimeMessage createMessage() {
+        return new MimeMessage(session);
+    }
+
+    /**
+     * 使用池中的连接发送邮件，没有可用连接时等待其他发送完成
+     *
+     * @throws MessagingException 连接或发送失败，可用 {@link #isRecipientRejected} 判断是否值得重试
+     */
+    public void send(MimeMessage message) throws MessagingException, InterruptedException {
+        permits.acquire();
+        try {
+            PooledTransport pooled = takeIdle();
+            if (pooled != null) {
+                try {
+                    sendWith(pooled, message);
+                    return;
+                } catch (MessagingException e) {
+                    if (isRecipientRejected(e)) {
+                        throw e;
+                    }
+                    // 连接可能已被服务器关闭，换用新连接重试
+                }
+            }
+            sendWith(connect(), message);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * 收件地址被服务器永久拒绝时重试也不会成功 <br>
+     * 连接被服务器关闭时同样会抛出 {@link SendFailedException}，但不包含被拒绝的地址
+     */
+    public static boolean isRecipientRejected(MessagingException e) {
+        return e instanceof SendFailedException sendFailed
+                && sendFailed.getInvalidAddresses() != null
+                && sendFailed.getInvalidAddresses().length > 0;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            idle.forEach(PooledTransport::close);
+            idle.clear();
+        }
+    }
+
+    private void sendWith(PooledTransport pooled, MimeMessage message) throws MessagingException {
+        try {
+            message.saveChanges();
+            pooled.transport.sendMessage(message, message.getAllRecipients());
+        } catch (MessagingException e) {
+            if (isRecipientRejected(e)) {
+                // 只是收件地址被拒绝，连接仍然可用
+                giveBack(pooled);
+            } else {
+                pooled.close();
+            }
+            throw e;
+        } catch (RuntimeException e) {
+            pooled.close();
+            throw e;
+        }
+        giveBack(pooled);
+    }
+
+    private PooledTransport connect() throws MessagingException {
+        Transport transport = session.getTransport("smtp");
+        transport.connect(host, port, user, pass);
+        return new PooledTransport(transport);
+    }
+
+    private synchronized PooledTransport takeIdle() {
+        long now = System.currentTimeMillis();
+        PooledTransport pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            // 不在借出前检查连接状态，那需要一次往返；失效的连接由发送失败后的重试处理
+            if (now - pooled.lastUsed <= idleTimeoutMillis) {
+                return pooled;
+            }
+            pooled.close();
+        }
+        return null;
+    }
+
+    private void giveBack(PooledTransport pooled) {
+        pooled.lastUsed = System.currentTimeMillis();
+        synchronized (this) {
+            if (!closed) {
+                // 最近使用的连接优先借出，多余的连接自然空闲超时
+                idle.offerFirst(pooled);
+                return;
+            }
+        }
+        pooled.close();
+    }
+
+    private static final class PooledTransport {
+        private final Transport transport;
+        private long lastUsed = System.currentTimeMillis();
+
+        private PooledTransport(Transport transport) {
+            this.transport = transport;
+        }
+
+        private void close() {
+            try {
+                transport.close();
+            } catch (MessagingException ignored) {
+                // 连接已不可用，无需处理
+            }
+        }
+    }
+}
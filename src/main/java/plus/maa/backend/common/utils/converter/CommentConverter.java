@@ -5,7 +5,6 @@ import org.mapstruct.Mapping;
 import plus.maa.backend.controller.response.comments.CommentsInfo;
 import plus.maa.backend.controller.response.comments.SubCommentsInfo;
 import plus.maa.backend.repository.entity.CommentsArea;
-import plus.maa.backend.repository.entity.MaaUser;
 
 /**
  * @author LoMu
@@ -16,15 +15,15 @@ import plus.maa.backend.repository.entity.MaaUser;
 public interface CommentConverter {
 
     @Mapping(target = "like", source = "likeCount")
-    @Mapping(target = "uploader", source = "maaUser.userName")
+    @Mapping(target = "uploader", source = "uploaderName")
     @Mapping(target = "commentId", source = "id")
     @Mapping(target = "subCommentsInfos", ignore = true)
-    CommentsInfo toCommentsInfo(CommentsArea commentsArea, String id, int likeCount, MaaUser maaUser);
+    CommentsInfo toCommentsInfo(CommentsArea commentsArea, String id, int likeCount, String uploaderName);
 
 
     @Mapping(target = "like", source = "likeCount")
-    @Mapping(target = "uploader", source = "maaUser.userName")
+    @Mapping(target = "uploader", source = "uploaderName")
     @Mapping(target = "commentId", source = "id")
     @Mapping(target = "deleted", source = "delete")
-    SubCommentsInfo toSubCommentsInfo(CommentsArea commentsArea, String id, int likeCount, MaaUser maaUser, boolean delete);
+    SubCommentsInfo toSubCommentsInfo(CommentsArea commentsArea, String id, int likeCount, String uploaderName, boolean delete);
 }
@@ -1,5 +1,6 @@
 package plus.maa.backend.config;
 
+import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
@@ -10,8 +11,11 @@ import plus.maa.backend.handler.AccessLimitInterceptHandlerImpl;
  * @author AnselYuki
  */
 @Configuration
+@RequiredArgsConstructor
 public class CorsConfig implements WebMvcConfigurer {
 
+    private final AccessLimitInterceptHandlerImpl accessLimitInterceptHandler;
+
 
     @Override
     public void addCorsMappings(CorsRegistry registry) {
@@ -33,6 +37,6 @@ public class CorsConfig implements WebMvcConfigurer {
 
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
-        registry.addInterceptor(new AccessLimitInterceptHandlerImpl());
+        registry.addInterceptor(accessLimitInterceptHandler);
     }
 }
@@ -0,0 +1,78 @@
+package plus.maa.backend.config;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexField;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.stereotype.Component;
+import plus.maa.backend.repository.entity.CommentNotificationDigest;
+import plus.maa.backend.repository.entity.CommentsArea;
+import plus.maa.backend.repository.entity.Copilot;
+import plus.maa.backend.repository.entity.OutboxMail;
+import plus.maa.backend.repository.entity.Rating;
+import plus.maa.backend.repository.entity.UploadFile;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 启动时校验查询依赖的索引 <br>
+ * 索引统一在实体类上以注解声明，这里按声明逐个比对数据库中实际存在的索引，缺失时补建，
+ * 避免关闭自动建索引或建索引失败时，查询在不知情的情况下退化为全表扫描
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MongoIndexVerifier {
+
+    // 查询热点集合
+    public static final List<Class<?>> INDEXED_ENTITIES = List.of(Copilot.class, CommentsArea.class, Rating.class,
+            OutboxMail.class, CommentNotificationDigest.class, UploadFile.class);
+
+    private final MongoTemplate mongoTemplate;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void verifyIndexes() {
+        MongoPersistentEntityIndexResolver resolver = new MongoPersistentEntityIndexResolver(
+                (MongoMappingContext) mongoTemplate.getConverter().getMappingContext());
+        for (Class<?> entity : INDEXED_ENTITIES) {
+            IndexOperations indexOps = mongoTemplate.indexOps(entity);
+            Set<Document> existing = indexOps.getIndexInfo().stream()
+                    .map(MongoIndexVerifier::keysOf)
+                    .collect(Collectors.toSet());
+            int missing = 0;
+            for (IndexDefinition definition : resolver.resolveIndexFor(entity)) {
+                if (existing.contains(definition.getIndexKeys())) {
+                    continue;
+                }
+                missing++;
+                log.warn("集合 {} 缺少索引 {}，开始创建", mongoTemplate.getCollectionName(entity), definition.getIndexKeys());
+                try {
+                    indexOps.ensureIndex(definition);
+                } catch (RuntimeException e) {
+                    log.error("集合 {} 创建索引 {} 失败：{}", mongoTemplate.getCollectionName(entity),
+                            definition.getIndexKeys(), e.getMessage());
+                }
+            }
+            log.info("集合 {} 索引校验完成，补建 {} 个", mongoTemplate.getCollectionName(entity), missing);
+        }
+    }
+
+    private static Document keysOf(IndexInfo info) {
+        Document keys = new Document();
+        for (IndexField field : info.getIndexFields()) {
+            keys.put(field.getKey(), field.getDirection() == Sort.Direction.DESC ? -1 : 1);
+        }
+        return keys;
+    }
+}
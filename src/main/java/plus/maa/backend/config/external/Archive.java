@@ -0,0 +1,11 @@
+package plus.maa.backend.config.external;
+
+@lombok.Data
+public class Archive {
+    // 是否禁用软删除数据归档
+    private boolean disabled;
+    // 软删除的数据保留多少天后移入归档集合
+    private int retentionDays = 90;
+    // 每批移动的文档数量
+    private int batchSize = 500;
+}
@@ -0,0 +1,16 @@
+package plus.maa.backend.config.external;
+
+@lombok.Data
+public class ConcurrencyLimit {
+    // 是否禁用读接口的自适应并发限制
+    private boolean disabled;
+    // 每个接口的初始并发上限
+    private int initialLimit = 20;
+    // 并发上限的调整范围
+    private int minLimit = 4;
+    private int maxLimit = 200;
+    // 平均延迟达到无负载延迟的多少倍时开始收缩并发上限
+    private double tolerance = 2.0;
+    // 拒绝时建议客户端的重试秒数
+    private int retryAfter = 1;
+}
@@ -0,0 +1,18 @@
+package plus.maa.backend.config.external;
+
+@lombok.Data
+public class HeavyHitter {
+    // 是否禁用热点客户端统计
+    private boolean disabled;
+    // 统计窗口的秒数
+    private int windowSeconds = 60;
+    // 窗口划分的子窗口数，窗口按子窗口滑动
+    private int slots = 6;
+    // count-min sketch 的行数和每行的计数器数，决定内存占用与估计误差
+    private int depth = 4;
+    private int width = 4096;
+    // 管理接口展示的热点数量
+    private int topK = 50;
+    // 单个 IP 在窗口内的请求数超过该值时直接拒绝，0 表示只统计不拦截
+    private long blockThreshold = 0;
+}
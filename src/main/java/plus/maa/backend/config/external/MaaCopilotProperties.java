@@ -23,7 +23,21 @@ public class MaaCopilotProperties {
     @NestedConfigurationProperty
     private CopilotBackup backup;
     @NestedConfigurationProperty
+    private Archive archive = new Archive();
+    @NestedConfigurationProperty
+    private RateLimit rateLimit = new RateLimit();
+    @NestedConfigurationProperty
+    private HeavyHitter heavyHitter = new HeavyHitter();
+    @NestedConfigurationProperty
+    private ConcurrencyLimit concurrencyLimit = new ConcurrencyLimit();
+    @NestedConfigurationProperty
+    private PasswordHashing passwordHashing = new PasswordHashing();
+    @NestedConfigurationProperty
     private Mail mail;
     @NestedConfigurationProperty
+    private MailOutbox mailOutbox = new MailOutbox();
+    @NestedConfigurationProperty
+    private NotificationDigest notificationDigest = new NotificationDigest();
+    @NestedConfigurationProperty
     private SensitiveWord sensitiveWord;
 }
@@ -0,0 +1,23 @@
+package plus.maa.backend.config.external;
+
+@lombok.Data
+public class MailOutbox {
+    // 检查待发送邮件的间隔毫秒数
+    private long interval = 1000;
+    // 每次最多领取的邮件数
+    private int batchSize = 50;
+    // 同时保持的 SMTP 连接数，也是并发发送的线程数
+    private int poolSize = 2;
+    // 空闲超过该秒数的 SMTP 连接在下次使用前重建
+    private int idleTimeout = 60;
+    // SMTP 连接和读写的超时秒数
+    private int smtpTimeout = 10;
+    // 最多尝试发送的次数
+    private int maxAttempts = 8;
+    // 首次重试的等待秒数，之后每次翻倍
+    private int retryDelay = 30;
+    // 重试等待的最大秒数
+    private int maxRetryDelay = 3600;
+    // 领取后超过该秒数仍未完成的邮件会被重新领取
+    private int claimTimeout = 300;
+}
@@ -0,0 +1,13 @@
+package plus.maa.backend.config.external;
+
+@lombok.Data
+public class NotificationDigest {
+    // 同一收件人的评论通知在首条通知后等待的秒数，期间的通知合并为一封邮件
+    private int window = 300;
+    // 一封邮件中最多列出的回复数，超出的只计数
+    private int maxItems = 20;
+    // 每次检查最多发送的合并邮件数
+    private int batchSize = 500;
+    // 领取后未发送完成的记录在该秒数后重新发送
+    private int claimTimeout = 60;
+}
@@ -0,0 +1,11 @@
+package plus.maa.backend.config.external;
+
+@lombok.Data
+public class PasswordHashing {
+    // 密码哈希线程数，0 表示使用 CPU 核数的一半
+    private int threads;
+    // 等待哈希的最大请求数，队列满时直接拒绝
+    private int queueCapacity = 64;
+    // 请求线程等待哈希结果的最长秒数
+    private int timeout = 10;
+}
@@ -0,0 +1,15 @@
+package plus.maa.backend.config.external;
+
+@lombok.Data
+public class RateLimit {
+    // 是否启用节点本地的令牌租约，关闭后每次请求都访问 redis
+    private boolean localEnabled = true;
+    // 每次从 redis 租借的令牌数占桶容量的比例，越大访问 redis 越少，但各节点间的配额越不均衡
+    private double leaseRatio = 0.2;
+    // 每次租借的最少令牌数，不超过桶容量减一
+    private int minLease = 2;
+    // 租借的令牌在本地的有效毫秒数，过期未用完的令牌作废，不超过桶的补满时间
+    private long leaseTtl = 1000;
+    // 本地最多保留的令牌桶数量
+    private int maxLocalBuckets = 100_000;
+}
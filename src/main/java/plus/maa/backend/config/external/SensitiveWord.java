@@ -2,5 +2,8 @@ package plus.maa.backend.config.external;
 
 @lombok.Data
 public class SensitiveWord {
+    // 敏感词文件路径，标准的 Spring 路径匹配语法
     private String path;
+    // 检查敏感词文件是否变更的间隔（秒），仅对文件系统中的词库生效
+    private long checkInterval = 60;
 }
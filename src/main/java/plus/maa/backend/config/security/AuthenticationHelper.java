@@ -68,7 +68,15 @@ public class AuthenticationHelper {
     public @NotNull String getUserIdOrIpAddress() {
         var id = getUserId();
         if (id != null) return id;
+        return getIpAddress();
+    }
 
+    /**
+     * 获取当前请求的 ip 地址。在 HTTP request 之外调用该方法会抛出 NPE
+     *
+     * @return ip 地址
+     */
+    public @NotNull String getIpAddress() {
         var attributes = Objects.requireNonNull(RequestContextHolder.getRequestAttributes());
         var request = ((ServletRequestAttributes) attributes).getRequest();
         return IpUtil.getIpAddr(request);
@@ -43,6 +43,8 @@ public class SecurityConfig {
             "/arknights/level",
             "/copilot/query",
             "/copilot/get/**",
+            "/copilot/export",
+            "/copilot/export/**",
             "/copilot/rating",
             "/comments/query",
             "/file/upload",
@@ -64,7 +66,10 @@ public class SecurityConfig {
             "/file/download/",
             "/file/disable",
             "/file/enable",
-            "/file/upload_ability"
+            "/file/upload_ability",
+            "/sensitive-word/reload",
+            "/heavy-hitters",
+            "/password-hashing/stats"
     };
     private final AuthenticationConfiguration authenticationConfiguration;
     private final JwtAuthenticationTokenFilter jwtAuthenticationTokenFilter;
@@ -2,6 +2,8 @@ package plus.maa.backend.controller;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -9,10 +11,13 @@ import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import plus.maa.backend.common.annotation.AccessLimit;
 import plus.maa.backend.common.annotation.JsonSchema;
-import plus.maa.backend.common.annotation.SensitiveWordDetection;
 import plus.maa.backend.config.SpringDocConfig;
 import plus.maa.backend.config.security.AuthenticationHelper;
 import plus.maa.backend.controller.request.copilot.CopilotCUDRequest;
@@ -21,7 +26,9 @@ import plus.maa.backend.controller.request.copilot.CopilotRatingReq;
 import plus.maa.backend.controller.response.MaaResult;
 import plus.maa.backend.controller.response.copilot.CopilotInfo;
 import plus.maa.backend.controller.response.copilot.CopilotPageInfo;
+import plus.maa.backend.service.CopilotExportService;
 import plus.maa.backend.service.CopilotService;
+import plus.maa.backend.service.model.CopilotExportArchive;
 
 /**
  * @author LoMu
@@ -34,14 +41,13 @@ import plus.maa.backend.service.CopilotService;
 @Tag(name = "CopilotController", description = "作业本体管理接口")
 public class CopilotController {
     private final CopilotService copilotService;
+    private final CopilotExportService exportService;
     private final AuthenticationHelper helper;
     private final HttpServletResponse response;
 
     @Operation(summary = "上传作业")
     @ApiResponse(description = "上传作业结果")
     @SecurityRequirement(name = SpringDocConfig.SECURITY_SCHEME_NAME)
-    @JsonSchema
-    @SensitiveWordDetection("#request.content != null ? #objectMapper.readTree(#request.content).get('doc')?.toString() : null")
     @PostMapping("/upload")
     public MaaResult<Long> uploadCopilot(
             @Parameter(description = "作业操作请求") @RequestBody CopilotCUDRequest request
@@ -67,7 +73,7 @@ public class CopilotController {
             @Parameter(description = "作业id") @PathVariable("id") Long id
     ) {
         var userIdOrIpAddress = helper.getUserIdOrIpAddress();
-        return copilotService.getCopilotById(userIdOrIpAddress, id).map(MaaResult::success)
+        return copilotService.getCopilotById(userIdOrIpAddress, helper.getIpAddress(), id).map(MaaResult::success)
                 .orElse(MaaResult.fail(404, "数据不存在"));
     }
 
@@ -83,11 +89,39 @@ public class CopilotController {
         return MaaResult.success(copilotService.queriesCopilot(helper.getUserId(), parsed));
     }
 
+    @Operation(summary = "批量导出作业", description = "按 catOne/catTwo/catThree 分目录打包为 zip，以流的方式返回")
+    @ApiResponse(
+            responseCode = "200",
+            content = @Content(mediaType = "application/zip", schema = @Schema(type = "string", format = "binary"))
+    )
+    @AccessLimit(times = 1, second = 60)
+    @GetMapping("/export")
+    public void exportCopilots() {
+        exportService.exportAll(response);
+    }
+
+    @Operation(summary = "导出指定关卡的作业", description = "结果会被缓存，并携带 ETag")
+    @ApiResponse(
+            responseCode = "200",
+            content = @Content(mediaType = "application/zip", schema = @Schema(type = "string", format = "binary"))
+    )
+    @GetMapping("/export/{stage}")
+    public ResponseEntity<byte[]> exportStageCopilots(
+            @Parameter(description = "关卡标识，支持 levelId、stageId 和 catThree") @PathVariable("stage") String stage
+    ) {
+        CopilotExportArchive archive = exportService.exportStage(stage);
+        // 携带 ETag 时，If-None-Match 命中会直接返回 304
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment;filename=" + archive.stageId() + ".zip")
+                .cacheControl(CacheControl.noCache())
+                .eTag(archive.etag())
+                .body(archive.content());
+    }
+
     @Operation(summary = "更新作业")
     @ApiResponse(description = "更新结果")
     @SecurityRequirement(name = SpringDocConfig.SECURITY_SCHEME_NAME)
-    @JsonSchema
-    @SensitiveWordDetection("#copilotCUDRequest.content != null ? #objectMapper.readTree(#copilotCUDRequest.content).get('doc')?.toString() : null")
     @PostMapping("/update")
     public MaaResult<Void> updateCopilot(
             @Parameter(description = "作业操作请求") @RequestBody CopilotCUDRequest copilotCUDRequest
@@ -2,14 +2,22 @@ package plus.maa.backend.controller;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import plus.maa.backend.config.SpringDocConfig;
 import plus.maa.backend.config.external.MaaCopilotProperties;
+import plus.maa.backend.controller.response.HeavyHittersInfo;
 import plus.maa.backend.controller.response.MaaResult;
 import plus.maa.backend.controller.response.MaaSystemInfo;
+import plus.maa.backend.controller.response.PasswordHashingStats;
+import plus.maa.backend.service.HeavyHitterService;
+import plus.maa.backend.service.PasswordHashingService;
+import plus.maa.backend.service.SensitiveWordService;
 
 
 /**
@@ -21,6 +29,9 @@ import plus.maa.backend.controller.response.MaaSystemInfo;
 @RequiredArgsConstructor
 public class SystemController {
     private final MaaCopilotProperties properties;
+    private final SensitiveWordService sensitiveWordService;
+    private final HeavyHitterService heavyHitterService;
+    private final PasswordHashingService passwordHashingService;
 
     @GetMapping("/")
     @Operation(summary = "Tests if the server is ready.")
@@ -41,4 +52,29 @@ public class SystemController {
         return MaaResult.success(systemInfo);
     }
 
+    @PostMapping("sensitive-word/reload")
+    @Operation(summary = "重新载入敏感词库",
+            description = "只重新载入处理本次请求的节点，其他节点在 maa-copilot.sensitive-word.check-interval 秒内检查到词库文件修改后自动载入")
+    @ApiResponse(description = "当前节点载入后的敏感词数量")
+    @SecurityRequirement(name = SpringDocConfig.SECURITY_SCHEME_NAME)
+    public MaaResult<Integer> reloadSensitiveWord() {
+        return MaaResult.success(sensitiveWordService.manualReload());
+    }
+
+    @GetMapping("heavy-hitters")
+    @Operation(summary = "查看请求量最大的客户端与接口")
+    @ApiResponse(description = "统计窗口内请求量最大的 IP 以及 IP + 接口，次数为估计值")
+    @SecurityRequirement(name = SpringDocConfig.SECURITY_SCHEME_NAME)
+    public MaaResult<HeavyHittersInfo> getHeavyHitters() {
+        return MaaResult.success(heavyHitterService.snapshot());
+    }
+
+    @GetMapping("password-hashing/stats")
+    @Operation(summary = "查看密码哈希线程池状态")
+    @ApiResponse(description = "排队数与启动以来累计的哈希次数和耗时")
+    @SecurityRequirement(name = SpringDocConfig.SECURITY_SCHEME_NAME)
+    public MaaResult<PasswordHashingStats> getPasswordHashingStats() {
+        return MaaResult.success(passwordHashingService.stats());
+    }
+
 }
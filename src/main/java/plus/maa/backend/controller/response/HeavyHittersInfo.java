@@ -0,0 +1,22 @@
+package plus.maa.backend.controller.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import plus.maa.backend.common.utils.HeavyHitterSketch;
+
+import java.util.List;
+
+/**
+ * 统计窗口内请求最多的客户端与接口，次数为估计值
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HeavyHittersInfo {
+    private int windowSeconds;
+    // IP
+    private List<HeavyHitterSketch.Entry> clients;
+    // IP + 请求方法 + 接口路径模板
+    private List<HeavyHitterSketch.Entry> endpoints;
+}
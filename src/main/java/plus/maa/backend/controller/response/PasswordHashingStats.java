@@ -0,0 +1,33 @@
+package plus.maa.backend.controller.response;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+/**
+ * 密码哈希线程池的运行状态，计数与耗时为启动以来的累计值，两次查询相减即为期间的统计
+ */
+@Data
+@Accessors(chain = true)
+public class PasswordHashingStats {
+    private int threads;
+    private int activeThreads;
+    private int queueDepth;
+    private int queueCapacity;
+    // 已完成的哈希次数
+    private long completed;
+    // 队列已满被拒绝的次数
+    private long rejected;
+    // 等待超时的次数
+    private long timedOut;
+    private long totalHashNanos;
+    private long totalWaitNanos;
+    private long maxHashNanos;
+
+    public double getAverageHashMillis() {
+        return completed == 0 ? 0 : totalHashNanos / 1e6 / completed;
+    }
+
+    public double getAverageWaitMillis() {
+        return completed == 0 ? 0 : totalWaitNanos / 1e6 / completed;
+    }
+}
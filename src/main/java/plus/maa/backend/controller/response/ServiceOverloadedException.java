@@ -0,0 +1,17 @@
+package plus.maa.backend.controller.response;
+
+import lombok.Getter;
+
+/**
+ * 接口并发已达上限，请求被直接拒绝，以 503 响应
+ */
+@Getter
+public class ServiceOverloadedException extends RuntimeException {
+    // 建议客户端的重试秒数
+    private final int retryAfter;
+
+    public ServiceOverloadedException(int retryAfter) {
+        super("服务繁忙，请稍后重试");
+        this.retryAfter = retryAfter;
+    }
+}
@@ -1,116 +1,118 @@
 package plus.maa.backend.handler;
 
-import java.lang.reflect.Method;
-import java.util.concurrent.TimeUnit;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.web.method.HandlerMethod;
 import org.springframework.web.servlet.HandlerInterceptor;
-import org.springframework.web.servlet.ModelAndView;
-
-import com.fasterxml.jackson.databind.ObjectMapper;
-
-import io.micrometer.common.util.StringUtils;
-import jakarta.servlet.http.HttpServletRequest;
-import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
 import plus.maa.backend.common.annotation.AccessLimit;
 import plus.maa.backend.common.utils.IpUtil;
-import plus.maa.backend.common.utils.SpringUtil;
 import plus.maa.backend.common.utils.WebUtils;
 import plus.maa.backend.controller.response.MaaResult;
+import plus.maa.backend.service.AccessLimitService;
+import plus.maa.backend.service.HeavyHitterService;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * 基于令牌桶的接口限流 <br>
+ * 每个接口的限流策略只在首次访问时解析，之后直接读取缓存；
+ * 令牌由 {@link AccessLimitService} 先在本地租约中扣减，只有租约耗尽时才访问 redis；
+ * 所有接口的请求都计入 {@link HeavyHitterService}，配置了拦截阈值时，请求量超过阈值的 IP 在访问 redis 之前即被拒绝，
+ * 被拒绝的请求不再计入，客户端停止请求后一个窗口内即可恢复
+ *
  * @author Baip1995
  */
+@Slf4j
 @Component
 public class AccessLimitInterceptHandlerImpl implements HandlerInterceptor {
 
-    private static final Logger logger = LoggerFactory.getLogger(AccessLimitInterceptHandlerImpl.class);
+    private static final String KEY_PREFIX = "access-limit:";
+
+    private final AccessLimitService accessLimitService;
+    private final HeavyHitterService heavyHitterService;
+
+    // 接口方法 -> 限流策略，没有 @AccessLimit 的方法缓存为 empty
+    private final Map<Method, Optional<AccessLimit>> policies = new ConcurrentHashMap<>();
+
+    // 拒绝时返回的固定响应体
+    private final String tooManyRequestsBody;
+
+    public AccessLimitInterceptHandlerImpl(AccessLimitService accessLimitService, HeavyHitterService heavyHitterService,
+                                           ObjectMapper objectMapper) throws JsonProcessingException {
+        this.accessLimitService = accessLimitService;
+        this.heavyHitterService = heavyHitterService;
+        this.tooManyRequestsBody = objectMapper.writeValueAsString(
+                MaaResult.fail(HttpStatus.TOO_MANY_REQUESTS.value(), "请求过于频繁"));
+    }
 
-    // @Resource
-    // private RedisCache redisCache;
     /**
      * 接口调用前检查对方ip是否频繁调用接口
-     *
-     * @param request
-     * @param response
-     * @param handler
-     * @return
-     * @throws Exception
      */
     @Override
-    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
-            throws Exception {
-        try {
-            // handler是否为 HandleMethod 实例
-            if (handler instanceof HandlerMethod) {
-                // 强转
-                HandlerMethod handlerMethod = (HandlerMethod) handler;
-                // 获取方法
-                Method method = handlerMethod.getMethod();
-                // 判断方式是否有AccessLimit注解，有的才需要做限流
-                if (!method.isAnnotationPresent(AccessLimit.class)) {
-                    return true;
-                }
-                StringRedisTemplate stringRedisTemplate = SpringUtil.getApplicationContext()
-                        .getBean(StringRedisTemplate.class);
-
-                // 获取注解上的内容
-                AccessLimit accessLimit = method.getAnnotation(AccessLimit.class);
-                if (accessLimit == null) {
-                    return true;
-                }
-                // 获取方法注解上的请求次数
-                int times = accessLimit.times();
-                // 获取方法注解上的请求时间
-                Integer second = accessLimit.second();
-
-                // 拼接redis key = IP + Api限流
-                String key = IpUtil.getIpAddr(request) + request.getRequestURI();
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!(handler instanceof HandlerMethod handlerMethod)) {
+            return true;
+        }
+        String ip = IpUtil.getIpAddr(request);
+        // 以路径模板统计，/copilot/get/{id} 不会按 id 拆分
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        if (heavyHitterService.isHeavyHitter(ip)) {
+            log.info("{} 请求量超过阈值", ip);
+            reject(response, heavyHitterService.retryAfterSeconds());
+            return false;
+        }
+        heavyHitterService.record(ip, request.getMethod() + " " + (pattern != null ? pattern : request.getRequestURI()));
 
-                // 获取redis的value
-                Integer maxTimes = null;
+        AccessLimit accessLimit = policies.computeIfAbsent(handlerMethod.getMethod(),
+                method -> resolvePolicy(handlerMethod)).orElse(null);
+        if (accessLimit == null) {
+            return true;
+        }
 
-                String value = stringRedisTemplate.opsForValue().get(key);
-                if (StringUtils.isNotEmpty(value)) {
-                    maxTimes = Integer.valueOf(value);
-                }
-                if (maxTimes == null) {
-                    // 如果redis中没有该ip对应的时间则表示第一次调用，保存key到redis
-                    stringRedisTemplate.opsForValue().set(key, "1", second, TimeUnit.SECONDS);
-                } else if (maxTimes < times) {
-                    // 如果redis中的时间比注解上的时间小则表示可以允许访问,这是修改redis的value时间
-                    stringRedisTemplate.opsForValue().set(key, maxTimes + 1 + "", second, TimeUnit.SECONDS);
-                } else {
-                    // 请求过于频繁
-                    logger.info(key + " 请求过于频繁");
-                    MaaResult<Void> result = MaaResult.fail(HttpStatus.TOO_MANY_REQUESTS.value(), "请求过于频繁");
-                    String json = new ObjectMapper().writeValueAsString(result);
-                    WebUtils.renderString(response, json, HttpStatus.TOO_MANY_REQUESTS.value());
-                    return false;
-                }
-            }
+        // 拼接redis key = IP + Api限流
+        String key = KEY_PREFIX + ip + request.getRequestURI();
+        long retryAfter;
+        try {
+            // 指定 second 内最多 times 次，即容量为 times，每 second 秒补满
+            retryAfter = accessLimitService.tryAcquire(key, accessLimit.times(), accessLimit.second() * 1000L);
         } catch (Exception e) {
-            logger.error("API请求限流拦截异常，异常原因：", e);
-            // throw new Exception("");
+            // 限流不可用时放行，不影响正常业务
+            log.error("API请求限流拦截异常，异常原因：", e);
+            return true;
         }
-        return true;
+        if (retryAfter == 0) {
+            return true;
+        }
+        log.info("{} 请求过于频繁", key);
+        reject(response, Math.max(1, (retryAfter + 999) / 1000));
+        return false;
     }
 
-    @Override
-    public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler,
-            ModelAndView modelAndView) throws Exception {
-
+    private void reject(HttpServletResponse response, long retryAfterSeconds) {
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        WebUtils.renderString(response, tooManyRequestsBody, HttpStatus.TOO_MANY_REQUESTS.value());
     }
 
-    @Override
-    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex)
-            throws Exception {
-
+    /**
+     * 方法上的注解优先，其次是类上的注解
+     */
+    private static Optional<AccessLimit> resolvePolicy(HandlerMethod handlerMethod) {
+        AccessLimit accessLimit = handlerMethod.getMethodAnnotation(AccessLimit.class);
+        if (accessLimit == null) {
+            accessLimit = AnnotatedElementUtils.findMergedAnnotation(handlerMethod.getBeanType(), AccessLimit.class);
+        }
+        return Optional.ofNullable(accessLimit);
     }
 
 }
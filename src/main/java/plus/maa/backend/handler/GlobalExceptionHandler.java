@@ -1,6 +1,8 @@
 package plus.maa.backend.handler;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.validation.FieldError;
 import org.springframework.web.HttpRequestMethodNotSupportedException;
@@ -18,6 +20,7 @@ import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
 import plus.maa.backend.controller.response.MaaResult;
 import plus.maa.backend.controller.response.MaaResultException;
+import plus.maa.backend.controller.response.ServiceOverloadedException;
 
 /**
  * @author john180
@@ -128,6 +131,16 @@ public class GlobalExceptionHandler {
         return MaaResult.fail(413, e.getMessage());
     }
 
+    /**
+     * 过载拒绝需要真实的 503 状态码与 Retry-After，供客户端和反向代理退避
+     */
+    @ExceptionHandler(ServiceOverloadedException.class)
+    public ResponseEntity<MaaResult<String>> serviceOverloadedHandler(ServiceOverloadedException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, Integer.toString(e.getRetryAfter()))
+                .body(MaaResult.fail(HttpStatus.SERVICE_UNAVAILABLE.value(), e.getMessage()));
+    }
+
     @ExceptionHandler(ResponseStatusException.class)
     public MaaResult<String> handleResponseStatusException(ResponseStatusException ex) {
         return MaaResult.fail(ex.getStatusCode().value(), ex.getMessage());
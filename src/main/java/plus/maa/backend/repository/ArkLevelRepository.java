@@ -27,6 +27,20 @@ public interface ArkLevelRepository extends MongoRepository<ArkLevel, String> {
             """)
     Stream<ArkLevel> findByLevelIdFuzzy(String levelId);
 
+    /**
+     * {@link #findByLevelIdFuzzy(String)} 的批量版本
+     */
+    @Query("""
+            {
+                "$or": [
+                    {"levelId": {"$in": ?0}},
+                    {"stageId": {"$in": ?0}},
+                    {"catThree": {"$in": ?0}}
+                ]
+            }
+            """)
+    Stream<ArkLevel> findByLevelIdsFuzzy(Collection<String> levelIds);
+
     /**
      * 用于前端查询 关卡名、关卡类型、关卡编号
      */
@@ -0,0 +1,7 @@
+package plus.maa.backend.repository;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+import plus.maa.backend.repository.entity.CopilotContent;
+
+public interface CopilotContentRepository extends MongoRepository<CopilotContent, Long> {
+}
@@ -3,11 +3,14 @@ package plus.maa.backend.repository;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 import plus.maa.backend.repository.entity.Copilot;
 
+import java.time.LocalDateTime;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * @author LoMu
@@ -28,4 +31,26 @@ public interface CopilotRepository extends MongoRepository<Copilot, String> {
 
     boolean existsCopilotsByCopilotId(Long copilotId);
 
+    /**
+     * 以游标方式读取全部作业，用于首次备份
+     */
+    Stream<Copilot> streamAllBy();
+
+    /**
+     * 以游标方式读取指定时间之后上传、更新或删除的作业，用于增量备份
+     */
+    Stream<Copilot> streamByUploadTimeAfterOrDeleteTimeAfter(LocalDateTime uploadTime, LocalDateTime deleteTime);
+
+    /**
+     * 以游标方式读取全部未删除作业的导出字段
+     */
+    @Query(value = "{'delete': false}", fields = "{'copilotId': 1, 'stageName': 1}")
+    Stream<Copilot> streamAllForExport();
+
+    /**
+     * 以游标方式读取指定关卡下未删除作业的导出字段
+     */
+    @Query(value = "{'stageName': ?0, 'delete': false}", fields = "{'copilotId': 1, 'stageName': 1}")
+    Stream<Copilot> streamForExportByStageName(String stageName);
+
 }
@@ -18,6 +18,7 @@ import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Component;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -58,6 +59,13 @@ public class RedisCache {
     // 比较与输入的键值对是否相同，相同则删除
     private final RedisScript<Boolean> removeKVIfEqualsScript = RedisScript.of(new ClassPathResource("redis-lua/removeKVIfEquals.lua"), Boolean.class);
 
+    private final RedisScript<Object> refreshTokenIssueScript = RedisScript.of(new ClassPathResource("redis-lua/refreshTokenIssue.lua"));
+
+    private final RedisScript<Boolean> refreshTokenRotateScript = RedisScript.of(new ClassPathResource("redis-lua/refreshTokenRotate.lua"), Boolean.class);
+
+    @SuppressWarnings("rawtypes")
+    private final RedisScript<List> tokenBucketScript = RedisScript.of(new ClassPathResource("redis-lua/tokenBucket.lua"), List.class);
+
     public <T> void setData(final String key, T value) {
         setCache(key, value, 0, TimeUnit.SECONDS);
     }
@@ -274,6 +282,37 @@ public class RedisCache {
         setData("level:commit", commit);
     }
 
+    /**
+     * 作业备份水位线，记录上一次成功备份时的时间点
+     */
+    @Nullable
+    public LocalDateTime getCacheBackupWatermark() {
+        return getCache("backup:copilot:watermark", LocalDateTime.class);
+    }
+
+    public void setCacheBackupWatermark(LocalDateTime watermark) {
+        setData("backup:copilot:watermark", watermark);
+    }
+
+    /**
+     * 关卡作业的版本号，关卡下的作业每次变动都会递增，用于使各节点的导出缓存失效
+     */
+    public long getCopilotStageVersion(String stageName) {
+        String version = redisTemplate.opsForValue().get(copilotStageVersionKey(stageName));
+        return version == null ? 0 : Long.parseLong(version);
+    }
+
+    public void incCopilotStageVersion(String stageName) {
+        String key = copilotStageVersionKey(stageName);
+        redisTemplate.opsForValue().increment(key);
+        // 导出缓存远短于该时长，过期后版本号归零也不会命中旧缓存
+        redisTemplate.expire(key, 1, TimeUnit.DAYS);
+    }
+
+    private static String copilotStageVersionKey(String stageName) {
+        return "copilot:stage:version:" + stageName;
+    }
+
     public void removeCache(String key) {
         redisTemplate.delete(key);
     }
@@ -293,6 +332,58 @@ public class RedisCache {
         );
     }
 
+    /**
+     * 登记用户新签发的 refresh token id，超过数量上限时移除最早的
+     *
+     * @param userId  用户 id
+     * @param jwtId   refresh token id
+     * @param limit   每个用户最多保留的 id 数量
+     * @param timeout 过期秒数，不短于 refresh token 的有效期
+     */
+    public void addRefreshJwtId(String userId, String jwtId, int limit, long timeout) {
+        redisTemplate.execute(refreshTokenIssueScript, List.of(refreshJwtIdsKey(userId)),
+                jwtId, Integer.toString(limit), Long.toString(timeout));
+    }
+
+    /**
+     * 原子地将旧的 refresh token id 替换为新的
+     *
+     * @return 旧 id 不存在（已被使用或已注销）时返回 false，不登记新 id
+     */
+    public boolean rotateRefreshJwtId(String userId, String oldJwtId, String newJwtId, long timeout) {
+        return Boolean.TRUE.equals(redisTemplate.execute(refreshTokenRotateScript, List.of(refreshJwtIdsKey(userId)),
+                oldJwtId, newJwtId, Long.toString(timeout)));
+    }
+
+    /**
+     * 注销用户的全部 refresh token
+     */
+    public void removeRefreshJwtIds(String userId) {
+        redisTemplate.delete(refreshJwtIdsKey(userId));
+    }
+
+    private static String refreshJwtIdsKey(String userId) {
+        return "refresh:jwt:" + userId;
+    }
+
+    /**
+     * 从令牌桶中原子地申请令牌，令牌不足时获得剩余的全部整数令牌，桶不存在时视为满桶
+     *
+     * @param key          令牌桶的 key
+     * @param capacity     桶容量
+     * @param periodMillis 空桶补满所需的毫秒数
+     * @param requested    申请的令牌数
+     * @return [实际获得的令牌数, 未获得任何令牌时距离下一个令牌可用的毫秒数]
+     */
+    public long[] acquireTokens(String key, long capacity, long periodMillis, long requested) {
+        List<?> result = redisTemplate.execute(tokenBucketScript, List.of(key),
+                Long.toString(capacity), Long.toString(periodMillis), Long.toString(requested));
+        if (result == null || result.size() < 2) {
+            throw new IllegalStateException("unexpected token bucket result: " + result);
+        }
+        return new long[]{((Number) result.get(0)).longValue(), ((Number) result.get(1)).longValue()};
+    }
+
     /**
      * 模糊删除缓存。
      *
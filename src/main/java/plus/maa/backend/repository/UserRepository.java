@@ -3,11 +3,6 @@ package plus.maa.backend.repository;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import plus.maa.backend.repository.entity.MaaUser;
 
-import java.util.List;
-import java.util.Map;
-import java.util.function.Function;
-import java.util.stream.Collectors;
-
 /**
  * @author AnselYuki
  */
@@ -20,10 +15,4 @@ public interface UserRepository extends MongoRepository<MaaUser, String> {
      */
     MaaUser findByEmail(String email);
 
-    default Map<String, MaaUser> findByUsersId(List<String> userId) {
-        return findAllById(userId)
-                .stream().collect(Collectors.toMap(MaaUser::getUserId, Function.identity()));
-    }
-
-
 }
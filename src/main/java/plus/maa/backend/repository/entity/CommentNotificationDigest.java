@@ -0,0 +1,44 @@
+package plus.maa.backend.repository.entity;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+import plus.maa.backend.service.model.CommentNotification;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 等待合并发送的评论通知，每个收件人一条
+ */
+@Data
+@Accessors(chain = true)
+@Document("maa_comment_notification_digest")
+public class CommentNotificationDigest {
+
+    // 收件人的用户 id
+    @Id
+    private String id;
+
+    // 收件人的用户名
+    private String authorName;
+
+    // 窗口内收到的回复总数
+    private long count;
+
+    // 最近的若干条回复，按时间升序
+    private List<CommentNotification> items = new ArrayList<>();
+
+    // 首条通知写入时确定的发送时间，领取后推迟到领取超时的时间
+    @Indexed
+    private LocalDateTime sendTime;
+
+    // 领取发送的标记，发送完成后只在标记未变时移除记录
+    private String claimId;
+
+    // 已领取发送的次数
+    private int attempts;
+}
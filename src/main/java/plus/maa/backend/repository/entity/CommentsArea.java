@@ -3,6 +3,8 @@ package plus.maa.backend.repository.entity;
 import lombok.Data;
 import lombok.experimental.Accessors;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
@@ -16,6 +18,13 @@ import java.time.LocalDateTime;
 @Data
 @Accessors(chain = true)
 @Document("maa_comments_area")
+// 评论区只展示未删除的评论，置顶评论在前
+@CompoundIndexes({
+        // 按点赞数排序，同时用于统计作业的评论数
+        @CompoundIndex(name = "idx_comments_hot", def = "{'delete': 1, 'copilotId': 1, 'topping': -1, 'likeCount': -1}", partialFilter = "{'delete': false}"),
+        // 按时间排序
+        @CompoundIndex(name = "idx_comments_time", def = "{'delete': 1, 'copilotId': 1, 'topping': -1, 'uploadTime': -1}", partialFilter = "{'delete': false}")
+})
 public class CommentsArea implements Serializable {
 
     @Id
@@ -42,9 +51,11 @@ public class CommentsArea implements Serializable {
 
     private boolean delete;
 
+    @Indexed(sparse = true)
     private LocalDateTime deleteTime;
 
     //其主评论id(如果自身为主评论则为null)
+    @Indexed(sparse = true)
     private String mainCommentId;
 
     //邮件通知
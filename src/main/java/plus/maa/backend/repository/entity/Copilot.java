@@ -8,6 +8,9 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.experimental.Accessors;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
@@ -25,6 +28,19 @@ import java.util.List;
 @JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
 @Accessors(chain = true)
 @Document("maa_copilot")
+// 列表查询只涉及未删除的作业，使用以 delete 开头的部分索引，索引中不包含已删除的作业
+@CompoundIndexes({
+        // 按ID排序，也用于热度刷新任务的分页
+        @CompoundIndex(name = "idx_copilot_id", def = "{'delete': 1, 'copilotId': -1}", partialFilter = "{'delete': false}"),
+        // 按热度排序
+        @CompoundIndex(name = "idx_copilot_hot", def = "{'delete': 1, 'hotScore': -1}", partialFilter = "{'delete': false}"),
+        // 按访问量排序
+        @CompoundIndex(name = "idx_copilot_views", def = "{'delete': 1, 'views': -1}", partialFilter = "{'delete': false}"),
+        // 查看某个用户上传的作业
+        @CompoundIndex(name = "idx_copilot_uploader", def = "{'delete': 1, 'uploaderId': 1, 'copilotId': -1}", partialFilter = "{'delete': false}"),
+        // 按关卡筛选与导出
+        @CompoundIndex(name = "idx_copilot_stage", def = "{'delete': 1, 'stageName': 1, 'copilotId': -1}", partialFilter = "{'delete': false}")
+})
 public class Copilot implements Serializable {
     @Id
     // 作业id
@@ -73,14 +89,18 @@ public class Copilot implements Serializable {
     private Doc doc;
 
     private LocalDateTime firstUploadTime;
+    // 增量备份按上传时间查询
+    @Indexed
     private LocalDateTime uploadTime;
 
-    // 原始数据
+    // 原始数据，单独存放在 maa_copilot_content 中，需要时由 CopilotContentService 填充
+    @Transient
     private String content;
 
     @JsonIgnore
     private boolean delete;
     @JsonIgnore
+    @Indexed(sparse = true)
     private LocalDateTime deleteTime;
     @JsonIgnore
     private Boolean notification;
@@ -0,0 +1,24 @@
+package plus.maa.backend.repository.entity;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * 作业原始数据，与作业元数据分开存储，只在查看详情、备份和导出时读取
+ */
+@Data
+@Accessors(chain = true)
+@Document("maa_copilot_content")
+public class CopilotContent {
+    // 与作业的数字ID一致
+    @Id
+    private Long copilotId;
+
+    // data 是否经过 gzip 压缩
+    private boolean compressed;
+
+    // 原始数据的 UTF-8 编码
+    private byte[] data;
+}
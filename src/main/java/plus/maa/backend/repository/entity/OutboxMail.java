@@ -0,0 +1,55 @@
+package plus.maa.backend.repository.entity;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * 待发送的邮件 <br>
+ * 发送成功后删除，超过重试次数后标记为 FAILED 保留以便排查
+ */
+@Data
+@Accessors(chain = true)
+@Document("maa_mail_outbox")
+// 按优先级和计划发送时间领取待发送的邮件
+@CompoundIndex(name = "idx_mail_outbox_due", def = "{'status': 1, 'priority': 1, 'nextAttemptTime': 1}")
+public class OutboxMail {
+
+    // 验证码需要尽快送达，不应排在大量通知邮件之后
+    public static final int PRIORITY_HIGH = 0;
+    public static final int PRIORITY_NORMAL = 1;
+
+    @Id
+    private String id;
+
+    private String to;
+
+    private String subject;
+
+    // 已渲染的邮件正文
+    private String content;
+
+    private boolean html;
+
+    private int priority = PRIORITY_NORMAL;
+
+    private Status status = Status.PENDING;
+
+    // 已尝试发送的次数
+    private int attempts;
+
+    // 下次可以发送的时间，被领取后推迟到领取超时，节点在发送中途退出时由其他节点重新领取
+    private LocalDateTime nextAttemptTime = LocalDateTime.now();
+
+    private String lastError;
+
+    private LocalDateTime createTime = LocalDateTime.now();
+
+    public enum Status {
+        PENDING, FAILED
+    }
+}
@@ -26,7 +26,9 @@ import java.time.LocalDateTime;
 // 复合索引
 @CompoundIndexes({
         // 一个用户对一个对象只能有一种评级
-        @CompoundIndex(name = "idx_rating", def = "{'type': 1, 'key': 1, 'userId': 1}", unique = true)
+        @CompoundIndex(name = "idx_rating", def = "{'type': 1, 'key': 1, 'userId': 1}", unique = true),
+        // 统计对象的评级数量，以及热度计算中按时间统计
+        @CompoundIndex(name = "idx_rating_count", def = "{'type': 1, 'key': 1, 'rating': 1, 'rateTime': 1}")
 })
 public class Rating {
     @Id
@@ -0,0 +1,19 @@
+package plus.maa.backend.repository.entity;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * 自增序列计数器，value 为已经分配出去的最大值
+ */
+@Data
+@Accessors(chain = true)
+@Document("maa_sequence")
+public class Sequence {
+    @Id
+    private String id;
+
+    private long value;
+}
@@ -0,0 +1,62 @@
+package plus.maa.backend.repository.entity;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+/**
+ * 一次上传的元数据 <br>
+ * 文件内容按 sha256 去重保存在 GridFS 中，相同内容的多次上传各自保留一条记录并指向同一个文件，
+ * 下载和删除都以这里的记录为准，GridFS 文件在引用数归零时才删除
+ */
+@Data
+@Accessors(chain = true)
+@Document("maa_upload_file")
+@CompoundIndexes({
+        // 数据集下载使用的等值和范围查询
+        @CompoundIndex(name = "idx_upload_type_classification", def = "{'typeLower': 1, 'classificationLower': 1, 'version': 1}"),
+        @CompoundIndex(name = "idx_upload_type_label", def = "{'typeLower': 1, 'labelLower': 1}")
+})
+public class UploadFile {
+
+    // 从历史文件迁移的记录使用文件 id 派生的字符串
+    @Id
+    private String id;
+
+    // 指向的 GridFS 文件
+    @Indexed
+    private ObjectId fileId;
+
+    private String sha256;
+
+    private String fileName;
+
+    private String version;
+
+    private String antecedentVersion;
+
+    private String label;
+
+    private String classification;
+
+    private String type;
+
+    private String ip;
+
+    // 规范化的小写字段，用于下载时的索引查询
+    private String typeLower;
+
+    private String classificationLower;
+
+    private String labelLower;
+
+    @Indexed
+    private Date uploadDate;
+}
@@ -0,0 +1,96 @@
+package plus.maa.backend.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.stereotype.Service;
+import plus.maa.backend.config.external.MaaCopilotProperties;
+import plus.maa.backend.config.external.RateLimit;
+import plus.maa.backend.repository.RedisCache;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 两级令牌桶限流 <br>
+ * redis 中的令牌桶是全局配额，各节点每次从中租借一批令牌在本地消耗，租约用完或过期后才再次访问 redis；
+ * redis 拒绝后，本地在下一个令牌可用之前直接拒绝同一 key 的请求。
+ * 大部分放行和拒绝都不产生网络请求，代价是各节点租借未用完的令牌在租约期内不能被其他节点使用，
+ * 实际放行量只会少于而不会多于全局配额 <br>
+ * 接口的桶通常很小（@AccessLimit 默认 10 秒 3 次），按比例计算的租约只有 1 个令牌，起不到批量租借的作用，
+ * 因此租约至少为 min-lease 个令牌，但不超过容量减一，单个节点的租约不会占满整个桶
+ */
+@Service
+public class AccessLimitService {
+
+    private final RedisCache redisCache;
+    private final RateLimit rateLimit;
+
+    // 限流 key -> 本地租约
+    private final Cache<String, Lease> leases;
+
+    public AccessLimitService(RedisCache redisCache, MaaCopilotProperties properties) {
+        this.redisCache = redisCache;
+        this.rateLimit = properties.getRateLimit();
+        this.leases = Caffeine.newBuilder()
+                .maximumSize(rateLimit.getMaxLocalBuckets())
+                // 租约被淘汰只会让下一次请求重新访问 redis，不影响限流的正确性
+                .expireAfterAccess(Duration.ofMinutes(10))
+                .build();
+    }
+
+    /**
+     * 申请一个令牌
+     *
+     * @param key          限流 key
+     * @param capacity     桶容量，即 period 内最多放行的次数
+     * @param periodMillis 空桶补满所需的毫秒数
+     * @return 0 表示放行，否则为建议的重试等待毫秒数
+     */
+    public long tryAcquire(String key, int capacity, long periodMillis) {
+        if (!rateLimit.isLocalEnabled()) {
+            long[] result = redisCache.acquireTokens(key, capacity, periodMillis, 1);
+            return result[0] > 0 ? 0 : Math.max(1, result[1]);
+        }
+        Lease lease = leases.get(key, k -> new Lease());
+        // 同一 key 在本节点的并发请求串行化，租约耗尽时只有一个请求访问 redis
+        synchronized (lease) {
+            long now = System.nanoTime();
+            if (now - lease.blockedUntil < 0) {
+                return Math.max(1, TimeUnit.NANOSECONDS.toMillis(lease.blockedUntil - now));
+            }
+            if (lease.tokens > 0 && now - lease.expiresAt < 0) {
+                lease.tokens--;
+                return 0;
+            }
+            long[] result = redisCache.acquireTokens(key, capacity, periodMillis, leaseSize(capacity));
+            if (result[0] > 0) {
+                long ttl = Math.min(rateLimit.getLeaseTtl(), periodMillis);
+                lease.tokens = result[0] - 1;
+                lease.expiresAt = now + TimeUnit.MILLISECONDS.toNanos(ttl);
+                return 0;
+            }
+            long retryAfter = Math.max(1, result[1]);
+            lease.tokens = 0;
+            lease.blockedUntil = now + TimeUnit.MILLISECONDS.toNanos(retryAfter);
+            return retryAfter;
+        }
+    }
+
+    /**
+     * 每次租借的令牌数，容量为 1 的桶只能逐个租借，此时本地只缓存 redis 的拒绝结果
+     */
+    long leaseSize(int capacity) {
+        long byRatio = (long) Math.floor(capacity * rateLimit.getLeaseRatio());
+        long minimum = Math.min(rateLimit.getMinLease(), capacity - 1L);
+        return Math.max(1, Math.max(byRatio, minimum));
+    }
+
+    private static final class Lease {
+        // 本地剩余的租借令牌
+        private long tokens;
+        // 租约过期时刻，System.nanoTime
+        private long expiresAt;
+        // redis 拒绝后本地直接拒绝到该时刻，System.nanoTime
+        private long blockedUntil = System.nanoTime();
+    }
+}
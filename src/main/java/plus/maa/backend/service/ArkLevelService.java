@@ -27,10 +27,14 @@ import java.io.IOException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * @author dragove
@@ -81,6 +85,27 @@ public class ArkLevelService {
         return arkLevelConverter.convert(level);
     }
 
+    /**
+     * 批量模糊查询关卡，一次查询解析多个关卡标识
+     *
+     * @param levelIds levelId、stageId 或 catThree
+     * @return 关卡标识 -> 关卡信息，未找到的标识不包含在内
+     */
+    public Map<String, ArkLevelInfo> findByLevelIdsFuzzy(Collection<String> levelIds) {
+        Map<String, ArkLevelInfo> result = new HashMap<>();
+        if (levelIds.isEmpty()) {
+            return result;
+        }
+        try (Stream<ArkLevel> levels = arkLevelRepo.findByLevelIdsFuzzy(levelIds)) {
+            levels.forEach(level -> {
+                ArkLevelInfo info = arkLevelConverter.convert(level);
+                Stream.of(level.getLevelId(), level.getStageId(), level.getCatThree())
+                        .filter(levelIds::contains)
+                        .forEach(id -> result.putIfAbsent(id, info));
+            });
+        }
+        return result;
+    }
 
     public List<ArkLevelInfo> queryLevelByKeyword(String keyword) {
         List<ArkLevel> levels = arkLevelRepo.queryLevelByKeyword(keyword).collect(Collectors.toList());
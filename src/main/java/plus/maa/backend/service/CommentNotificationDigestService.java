@@ -0,0 +1,139 @@
+package plus.maa.backend.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import plus.maa.backend.config.external.MaaCopilotProperties;
+import plus.maa.backend.config.external.NotificationDigest;
+import plus.maa.backend.repository.UserRepository;
+import plus.maa.backend.repository.entity.CommentNotificationDigest;
+import plus.maa.backend.repository.entity.MaaUser;
+import plus.maa.backend.service.model.CommentNotification;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 评论通知合并 <br>
+ * 回复通知先追加到收件人的待发送记录中，首条通知之后的 window 秒内收到的回复合并为一封邮件发送，
+ * 热门作业的评论再多，每个收件人每个窗口也只渲染和发送一封邮件。
+ * 收件人的邮箱在发送时才查询，评论时只有一次 upsert。
+ * 发送前先推迟发送时间领取记录，写入发件箱后才移除，发送失败的记录在领取超时后重试
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CommentNotificationDigestService {
+
+    // 领取后发送失败的次数超过该值时丢弃，避免无法发送的记录一直重试
+    private static final int MAX_ATTEMPTS = 5;
+
+    private final MongoTemplate mongoTemplate;
+    private final UserRepository userRepository;
+    private final EmailService emailService;
+    private final MaaCopilotProperties maaCopilotProperties;
+
+    /**
+     * 记录一条待发送的回复通知
+     *
+     * @param userId 收件人的用户 id
+     */
+    public void add(String userId, CommentNotification notification) {
+        NotificationDigest config = maaCopilotProperties.getNotificationDigest();
+        Update update = new Update()
+                .setOnInsert("sendTime", LocalDateTime.now().plusSeconds(config.getWindow()))
+                .set("authorName", notification.getAuthorName())
+                .inc("count", 1)
+                // 只保留最近的 maxItems 条回复
+                .push("items").slice(-Math.max(1, config.getMaxItems())).each(notification);
+        mongoTemplate.upsert(Query.query(Criteria.where("_id").is(userId)), update, CommentNotificationDigest.class);
+    }
+
+    /**
+     * 发送到期的合并通知 <br>
+     * 记录领取后推迟发送时间，多个节点不会重复发送；发送期间到达的回复在发送完成后留在记录中，进入下一个窗口
+     */
+    @Scheduled(fixedDelay = 10, timeUnit = TimeUnit.SECONDS)
+    public void flush() {
+        NotificationDigest config = maaCopilotProperties.getNotificationDigest();
+        int sent = 0;
+        while (sent < config.getBatchSize()) {
+            CommentNotificationDigest digest = claim(config);
+            if (digest == null) {
+                break;
+            }
+            sent++;
+            if (digest.getAttempts() > MAX_ATTEMPTS) {
+                log.error("评论通知多次发送失败，不再重试: userId={}, count={}", digest.getId(), digest.getCount());
+                complete(digest, config);
+                continue;
+            }
+            try {
+                send(digest);
+            } catch (RuntimeException e) {
+                log.error("评论通知发送失败，{} 秒后重试: userId={}, count={}",
+                        config.getClaimTimeout(), digest.getId(), digest.getCount(), e);
+                continue;
+            }
+            complete(digest, config);
+        }
+        if (sent > 0) {
+            log.info("sent {} comment notification digests", sent);
+        }
+    }
+
+    private CommentNotificationDigest claim(NotificationDigest config) {
+        LocalDateTime now = LocalDateTime.now();
+        Query query = Query.query(Criteria.where("sendTime").lte(now))
+                .with(Sort.by("sendTime"));
+        Update update = new Update()
+                .set("sendTime", now.plusSeconds(config.getClaimTimeout()))
+                .set("claimId", UUID.randomUUID().toString())
+                .inc("attempts", 1);
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true),
+                CommentNotificationDigest.class);
+    }
+
+    /**
+     * 移除已发送的通知。领取后没有新的回复时直接删除记录，
+     * 否则只扣除已发送的部分，剩余的回复从现在开始一个新的窗口
+     */
+    private void complete(CommentNotificationDigest digest, NotificationDigest config) {
+        Criteria claimed = Criteria.where("_id").is(digest.getId()).and("claimId").is(digest.getClaimId());
+        if (mongoTemplate.remove(Query.query(claimed).addCriteria(Criteria.where("count").is(digest.getCount())),
+                CommentNotificationDigest.class).getDeletedCount() > 0) {
+            return;
+        }
+        Update update = new Update()
+                .inc("count", -digest.getCount())
+                .pullAll("items", digest.getItems().toArray())
+                .set("sendTime", LocalDateTime.now().plusSeconds(config.getWindow()))
+                .set("attempts", 0)
+                .unset("claimId");
+        mongoTemplate.updateFirst(Query.query(claimed), update, CommentNotificationDigest.class);
+    }
+
+    private void send(CommentNotificationDigest digest) {
+        if (digest.getItems().isEmpty()) {
+            return;
+        }
+        String email = userRepository.findById(digest.getId()).map(MaaUser::getEmail).orElse(null);
+        if (email == null) {
+            return;
+        }
+        if (digest.getCount() == 1) {
+            emailService.sendCommentNotification(email, digest.getItems().get(0));
+        } else {
+            emailService.sendCommentNotificationDigest(email, digest.getAuthorName(), digest.getCount(),
+                    digest.getItems());
+        }
+    }
+}
@@ -7,6 +7,10 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
 import plus.maa.backend.common.utils.converter.CommentConverter;
@@ -21,10 +25,8 @@ import plus.maa.backend.controller.response.comments.SubCommentsInfo;
 import plus.maa.backend.repository.CommentsAreaRepository;
 import plus.maa.backend.repository.CopilotRepository;
 import plus.maa.backend.repository.RatingRepository;
-import plus.maa.backend.repository.UserRepository;
 import plus.maa.backend.repository.entity.CommentsArea;
 import plus.maa.backend.repository.entity.Copilot;
-import plus.maa.backend.repository.entity.MaaUser;
 import plus.maa.backend.repository.entity.Rating;
 import plus.maa.backend.service.model.CommentNotification;
 import plus.maa.backend.service.model.RatingType;
@@ -47,13 +49,13 @@ public class CommentsAreaService {
 
     private final CopilotRepository copilotRepository;
 
-    private final UserRepository userRepository;
+    private final MongoTemplate mongoTemplate;
 
-    private final EmailService emailService;
+    private final UserNameService userNameService;
 
-    private final MaaCopilotProperties maaCopilotProperties;
+    private final CommentNotificationDigestService commentNotificationDigestService;
 
-    private final MaaUser UNKNOWN_USER = new MaaUser().setUserName("未知用户:(");
+    private final MaaCopilotProperties maaCopilotProperties;
 
     private final CommentConverter commentConverter;
 
@@ -112,7 +114,7 @@ public class CommentsAreaService {
             String replyUserId = isCopilotAuthor ? copilot.getUploaderId() : commentsArea.getUploaderId();
 
 
-            Map<String, MaaUser> maaUserMap = userRepository.findByUsersId(List.of(userId, replyUserId));
+            Map<String, String> userNames = userNameService.getUserNames(List.of(userId, replyUserId));
 
             //防止通知自己
             if (!Objects.equals(replyUserId, userId)) {
@@ -121,8 +123,8 @@ public class CommentsAreaService {
                 CommentNotification commentNotification = new CommentNotification();
 
 
-                String authorName = maaUserMap.getOrDefault(replyUserId, UNKNOWN_USER).getUserName();
-                String reName = maaUserMap.getOrDefault(userId, UNKNOWN_USER).getUserName();
+                String authorName = userNames.getOrDefault(replyUserId, UserNameService.UNKNOWN_USER_NAME);
+                String reName = userNames.getOrDefault(userId, UserNameService.UNKNOWN_USER_NAME);
 
                 String title = isCopilotAuthor ? copilot.getDoc().getTitle() : commentsArea.getMessage();
 
@@ -134,10 +136,8 @@ public class CommentsAreaService {
                         .setReMessage(message);
 
 
-                MaaUser maaUser = maaUserMap.get(replyUserId);
-                if (Objects.nonNull(maaUser)) {
-                    emailService.sendCommentNotification(maaUser.getEmail(), commentNotification);
-                }
+                // 同一收件人短时间内的多条回复合并为一封邮件
+                commentNotificationDigestService.add(replyUserId, commentNotification);
             }
         }
 
@@ -165,20 +165,17 @@ public class CommentsAreaService {
                                         || Objects.equals(userId, commentsArea.getUploaderId()),
                                 "您无法删除不属于您的评论")
                 );
-        LocalDateTime now = LocalDateTime.now();
-        commentsArea.setDelete(true);
-        commentsArea.setDeleteTime(now);
+        Update delete = new Update()
+                .set("delete", true)
+                .set("deleteTime", LocalDateTime.now());
 
         //删除所有回复
         if (StringUtils.isBlank(commentsArea.getMainCommentId())) {
-            List<CommentsArea> commentsAreaList = commentsAreaRepository.findByMainCommentId(commentsArea.getId());
-            commentsAreaList.forEach(ca ->
-                    ca.setDeleteTime(now)
-                            .setDelete(true)
-            );
-            commentsAreaRepository.saveAll(commentsAreaList);
+            mongoTemplate.updateMulti(Query.query(Criteria.where("mainCommentId").is(commentsArea.getId())),
+                    delete, CommentsArea.class);
         }
-        commentsAreaRepository.save(commentsArea);
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(commentsArea.getId())),
+                delete, CommentsArea.class);
     }
 
 
@@ -223,14 +220,15 @@ public class CommentsAreaService {
             change = newRating.getRating() == RatingType.LIKE ? 1 : 0;
         }
 
-        // 点赞数不需要在高并发下特别精准，大概就行，但是也得避免特别离谱的数字
-        long likeCount = commentsArea.getLikeCount() + change;
-        if (likeCount < 0) {
-            likeCount = 0;
+        if (change == 0) {
+            return;
         }
-        commentsArea.setLikeCount(likeCount);
-
-        commentsAreaRepository.save(commentsArea);
+        // 直接在数据库中增减点赞数，减少时要求当前点赞数大于 0，避免出现负数
+        Criteria criteria = Criteria.where("_id").is(commentsArea.getId());
+        if (change < 0) {
+            criteria.and("likeCount").gt(0);
+        }
+        mongoTemplate.updateFirst(Query.query(criteria), new Update().inc("likeCount", change), CommentsArea.class);
     }
 
     /**
@@ -248,8 +246,8 @@ public class CommentsAreaService {
                             Assert.isTrue(
                                     Objects.equals(userId, copilot.getUploaderId()),
                                     "只有作者才能置顶评论");
-                            commentsArea.setTopping(commentsToppingDTO.isTopping());
-                            commentsAreaRepository.save(commentsArea);
+                            mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(commentsArea.getId())),
+                                    new Update().set("topping", commentsToppingDTO.isTopping()), CommentsArea.class);
                         }
                 );
     }
@@ -319,7 +317,7 @@ public class CommentsAreaService {
 
         //获取所有评论用户
         List<String> userId = allComments.stream().map(CommentsArea::getUploaderId).distinct().toList();
-        Map<String, MaaUser> maaUserMap = userRepository.findByUsersId(userId);
+        Map<String, String> userNames = userNameService.getUserNames(userId);
 
 
         //转换主评论数据并填充用户名
@@ -330,9 +328,9 @@ public class CommentsAreaService {
                                     mainComment
                                     , mainComment.getId()
                                     , (int) mainComment.getLikeCount()
-                                    , maaUserMap.getOrDefault(
+                                    , userNames.getOrDefault(
                                             mainComment.getUploaderId()
-                                            , UNKNOWN_USER
+                                            , UserNameService.UNKNOWN_USER_NAME
                                     )
                             );
 
@@ -346,9 +344,9 @@ public class CommentsAreaService {
                                             , subComment.getId()
                                             , (int) subComment.getLikeCount()
                                             //填充评论用户名
-                                            , maaUserMap.getOrDefault(
+                                            , userNames.getOrDefault(
                                                     subComment.getUploaderId(),
-                                                    UNKNOWN_USER
+                                                    UserNameService.UNKNOWN_USER_NAME
                                             )
                                             , subComment.isDelete()
                                     )
@@ -374,11 +372,12 @@ public class CommentsAreaService {
 
 
     public void notificationStatus(String userId, String id, boolean status) {
-        Optional<CommentsArea> commentsAreaOptional = commentsAreaRepository.findById(id);
-        Assert.isTrue(commentsAreaOptional.isPresent(), "评论不存在");
-        CommentsArea commentsArea = commentsAreaOptional.get();
-        Assert.isTrue(Objects.equals(userId, commentsArea.getUploaderId()), "您没有权限修改");
-        commentsArea.setNotification(status);
-        commentsAreaRepository.save(commentsArea);
+        Query query = Query.query(Criteria.where("_id").is(id).and("uploaderId").is(userId));
+        if (mongoTemplate.updateFirst(query, new Update().set("notification", status), CommentsArea.class)
+                .getMatchedCount() > 0) {
+            return;
+        }
+        Assert.isTrue(commentsAreaRepository.existsById(id), "评论不存在");
+        throw new IllegalArgumentException("您没有权限修改");
     }
 }
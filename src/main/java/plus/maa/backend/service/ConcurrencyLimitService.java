@@ -0,0 +1,75 @@
+package plus.maa.backend.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import plus.maa.backend.common.utils.AdaptiveConcurrencyLimiter;
+import plus.maa.backend.config.external.ConcurrencyLimit;
+import plus.maa.backend.config.external.MaaCopilotProperties;
+import plus.maa.backend.controller.response.ServiceOverloadedException;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 读接口的自适应并发限制 <br>
+ * 每个接口一个 {@link AdaptiveConcurrencyLimiter}，只包裹实际访问数据库的部分，命中缓存的请求不受影响；
+ * 超过上限的请求立即以 {@link ServiceOverloadedException} 拒绝，不再占用线程排队等待数据库
+ */
+@Slf4j
+@Service
+public class ConcurrencyLimitService {
+
+    private final ConcurrencyLimit config;
+    private final Map<String, AdaptiveConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+    // 接口 -> 上次日志以来拒绝的请求数
+    private final Map<String, LongAdder> rejected = new ConcurrentHashMap<>();
+
+    public ConcurrencyLimitService(MaaCopilotProperties properties) {
+        this.config = properties.getConcurrencyLimit();
+    }
+
+    /**
+     * 在并发限制内执行
+     *
+     * @param name   接口名称，每个名称独立限制
+     * @param action 访问数据库的操作
+     * @throws ServiceOverloadedException 并发已达上限
+     */
+    public <T> T execute(String name, Supplier<T> action) {
+        if (config.isDisabled()) {
+            return action.get();
+        }
+        AdaptiveConcurrencyLimiter limiter = limiters.computeIfAbsent(name, k -> new AdaptiveConcurrencyLimiter(
+                config.getInitialLimit(), config.getMinLimit(), config.getMaxLimit(), config.getTolerance()));
+        int inFlight = limiter.tryAcquire();
+        if (inFlight < 0) {
+            rejected.computeIfAbsent(name, k -> new LongAdder()).increment();
+            throw new ServiceOverloadedException(config.getRetryAfter());
+        }
+        long start = System.nanoTime();
+        try {
+            return action.get();
+        } finally {
+            limiter.release(System.nanoTime() - start, inFlight);
+        }
+    }
+
+    /**
+     * 定期输出拒绝数量与当前上限
+     */
+    @Scheduled(fixedDelay = 1, timeUnit = TimeUnit.MINUTES)
+    public void logRejected() {
+        rejected.forEach((name, count) -> {
+            long sum = count.sumThenReset();
+            if (sum > 0) {
+                AdaptiveConcurrencyLimiter limiter = limiters.get(name);
+                log.warn("{} 并发已达上限，过去一分钟拒绝 {} 个请求，当前上限 {}", name, sum,
+                        limiter == null ? -1 : limiter.getLimit());
+            }
+        });
+    }
+}
@@ -0,0 +1,193 @@
+package plus.maa.backend.service;
+
+import com.google.common.collect.Iterators;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import plus.maa.backend.repository.CopilotContentRepository;
+import plus.maa.backend.repository.entity.Copilot;
+import plus.maa.backend.repository.entity.CopilotContent;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 作业原始数据存储 <br>
+ * 原始数据体积远大于作业的其他字段，单独存放在 maa_copilot_content 中，
+ * 列表查询、评分等操作不再读取和传输这部分数据；较大的内容以 gzip 压缩后存储
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CopilotContentService {
+
+    // 超过该字节数的内容才尝试压缩
+    private static final int COMPRESS_THRESHOLD = 512;
+    private static final int MIGRATE_BATCH_SIZE = 500;
+
+    private final CopilotContentRepository contentRepository;
+    private final MongoTemplate mongoTemplate;
+    private final MigrationService migrationService;
+
+    /**
+     * 启动完成后在后台执行一次迁移，不阻塞启动
+     */
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrate() {
+        migrationService.runOnce("copilot-content-collection", this::migrateContent);
+    }
+
+    /**
+     * 将仍保存在作业文档中的原始数据迁移到独立的集合
+     */
+    private void migrateContent() {
+        String collection = mongoTemplate.getCollectionName(Copilot.class);
+        Query query = Query.query(Criteria.where("content").exists(true));
+        query.fields().include("copilotId", "content");
+        AtomicInteger migrated = new AtomicInteger();
+        try (Stream<Document> documents = mongoTemplate.stream(query, Document.class, collection)) {
+            Iterators.partition(documents.iterator(), MIGRATE_BATCH_SIZE).forEachRemaining(batch -> {
+                List<CopilotContent> contents = batch.stream()
+                        .filter(document -> document.get("copilotId") instanceof Number
+                                && document.get("content") instanceof String)
+                        .map(document -> encode(((Number) document.get("copilotId")).longValue(),
+                                document.getString("content")))
+                        .toList();
+                if (!contents.isEmpty()) {
+                    // 迁移期间被更新的作业已经写入了新内容，只补充不存在的记录
+                    BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, CopilotContent.class);
+                    for (CopilotContent content : contents) {
+                        bulk.upsert(Query.query(Criteria.where("_id").is(content.getCopilotId())), new Update()
+                                .setOnInsert("compressed", content.isCompressed())
+                                .setOnInsert("data", content.getData()));
+                    }
+                    bulk.execute();
+                }
+                // 写入成功后再移除作业文档中的原始数据
+                mongoTemplate.updateMulti(Query.query(Criteria.where("_id")
+                                .in(batch.stream().map(document -> document.get("_id")).toList())),
+                        new Update().unset("content"), collection);
+                migrated.addAndGet(contents.size());
+            });
+        }
+        log.info("作业原始数据迁移完成，共 {} 条", migrated.get());
+    }
+
+    /**
+     * 保存作业原始数据，已存在则覆盖
+     */
+    public void save(Long copilotId, String content) {
+        contentRepository.save(encode(copilotId, content));
+    }
+
+    /**
+     * 读取单个作业的原始数据
+     */
+    @Nullable
+    public String load(Long copilotId) {
+        return contentRepository.findById(copilotId)
+                .map(CopilotContentService::decode)
+                .orElseGet(() -> loadLegacy(List.of(copilotId)).get(copilotId));
+    }
+
+    /**
+     * 一次查询为一批作业填充原始数据
+     */
+    public void fillContent(Collection<Copilot> copilots) {
+        if (copilots.isEmpty()) {
+            return;
+        }
+        Map<Long, CopilotContent> contents = contentRepository.findAllById(copilots.stream()
+                        .map(Copilot::getCopilotId)
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toSet()))
+                .stream()
+                .collect(Collectors.toMap(CopilotContent::getCopilotId, Function.identity()));
+        List<Long> missing = copilots.stream()
+                .map(Copilot::getCopilotId)
+                .filter(copilotId -> copilotId != null && !contents.containsKey(copilotId))
+                .toList();
+        Map<Long, String> legacy = loadLegacy(missing);
+        for (Copilot copilot : copilots) {
+            CopilotContent content = contents.get(copilot.getCopilotId());
+            if (content != null) {
+                copilot.setContent(decode(content));
+            } else if (legacy.containsKey(copilot.getCopilotId())) {
+                copilot.setContent(legacy.get(copilot.getCopilotId()));
+            }
+        }
+    }
+
+    /**
+     * 迁移完成前，部分作业的原始数据仍保存在作业文档中
+     */
+    private Map<Long, String> loadLegacy(Collection<Long> copilotIds) {
+        if (copilotIds.isEmpty()) {
+            return Map.of();
+        }
+        Query query = Query.query(Criteria.where("copilotId").in(copilotIds).and("content").exists(true));
+        query.fields().include("copilotId", "content");
+        return mongoTemplate.find(query, Document.class, mongoTemplate.getCollectionName(Copilot.class)).stream()
+                .filter(document -> document.get("copilotId") instanceof Number
+                        && document.get("content") instanceof String)
+                .collect(Collectors.toMap(document -> ((Number) document.get("copilotId")).longValue(),
+                        document -> document.getString("content"), (a, b) -> a));
+    }
+
+    private static CopilotContent encode(Long copilotId, String content) {
+        byte[] raw = content.getBytes(StandardCharsets.UTF_8);
+        CopilotContent copilotContent = new CopilotContent()
+                .setCopilotId(copilotId)
+                .setCompressed(false)
+                .setData(raw);
+        if (raw.length < COMPRESS_THRESHOLD) {
+            return copilotContent;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(raw);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // 压缩后没有变小则保存原文
+        if (out.size() < raw.length) {
+            copilotContent.setCompressed(true).setData(out.toByteArray());
+        }
+        return copilotContent;
+    }
+
+    private static String decode(CopilotContent content) {
+        if (!content.isCompressed()) {
+            return new String(content.getData(), StandardCharsets.UTF_8);
+        }
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(content.getData()))) {
+            return new String(gzip.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
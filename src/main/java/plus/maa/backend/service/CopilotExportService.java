@@ -0,0 +1,131 @@
+package plus.maa.backend.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.collect.Iterators;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+import plus.maa.backend.controller.response.MaaResultException;
+import plus.maa.backend.controller.response.copilot.ArkLevelInfo;
+import plus.maa.backend.repository.CopilotRepository;
+import plus.maa.backend.repository.RedisCache;
+import plus.maa.backend.repository.entity.Copilot;
+import plus.maa.backend.service.model.CopilotExportArchive;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 作业批量导出，与备份仓库一致，按 catOne/catTwo/catThree 分目录打包为 zip
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CopilotExportService {
+    // 每批从游标读取的作业数量
+    private static final int BATCH_SIZE = 500;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final CopilotRepository copilotRepository;
+    private final ArkLevelService levelService;
+    private final CopilotContentService contentService;
+    private final RedisCache redisCache;
+
+    // 按关卡及其版本号缓存打包好的 zip，以字节数限制缓存总大小
+    private final Cache<StageVersion, CopilotExportArchive> stageArchiveCache = Caffeine.newBuilder()
+            .maximumWeight(64 * 1024 * 1024)
+            .weigher((StageVersion key, CopilotExportArchive archive) -> archive.content().length)
+            .expireAfterWrite(10, TimeUnit.MINUTES)
+            .build();
+
+    /**
+     * 导出全部作业，边读取游标边写入响应流，不在内存中生成完整的压缩包
+     */
+    public void exportAll(HttpServletResponse response) {
+        response.setContentType("application/zip");
+        response.addHeader("Content-Disposition", "attachment;filename=maa-copilots.zip");
+        try (Stream<Copilot> copilots = copilotRepository.streamAllForExport()) {
+            writeZip(copilots, response.getOutputStream());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 导出指定关卡的作业，打包结果会被缓存
+     *
+     * @param stage 关卡标识，支持 levelId、stageId 和 catThree
+     * @return 打包好的作业
+     */
+    public CopilotExportArchive exportStage(String stage) {
+        ArkLevelInfo level = levelService.findByLevelIdFuzzy(stage);
+        if (Objects.isNull(level)) {
+            throw new MaaResultException(404, "关卡不存在");
+        }
+        // 关卡下的作业变动后版本号递增，各节点都不会再命中旧的打包结果
+        StageVersion key = new StageVersion(level.getStageId(), redisCache.getCopilotStageVersion(level.getStageId()));
+        return stageArchiveCache.get(key, k -> buildStageArchive(k.stageId()));
+    }
+
+    /**
+     * 作业上传、修改或删除后调用，使所在关卡的导出缓存失效
+     */
+    public void invalidateStage(@Nullable String stageName) {
+        if (stageName != null) {
+            redisCache.incCopilotStageVersion(stageName);
+        }
+    }
+
+    private CopilotExportArchive buildStageArchive(String stageId) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (Stream<Copilot> copilots = copilotRepository.streamForExportByStageName(stageId)) {
+            writeZip(copilots, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] content = out.toByteArray();
+        return new CopilotExportArchive(stageId, content, "\"0" + DigestUtils.md5DigestAsHex(content) + "\"");
+    }
+
+    private void writeZip(Stream<Copilot> copilots, OutputStream outputStream) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(outputStream, BUFFER_SIZE));
+        // 分批读取，每批只查询一次关卡信息；写入阻塞时游标也不会继续读取
+        Iterator<List<Copilot>> batches = Iterators.partition(copilots.iterator(), BATCH_SIZE);
+        while (batches.hasNext()) {
+            List<Copilot> batch = batches.next();
+            Map<String, ArkLevelInfo> levels = levelService.findByLevelIdsFuzzy(batch.stream()
+                    .map(Copilot::getStageName)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toSet()));
+            contentService.fillContent(batch);
+            for (Copilot copilot : batch) {
+                ArkLevelInfo level = levels.get(copilot.getStageName());
+                if (Objects.isNull(level) || Objects.isNull(copilot.getContent())) {
+                    continue;
+                }
+                zip.putNextEntry(new ZipEntry(String.join("/", level.getCatOne(), level.getCatTwo(),
+                        level.getCatThree(), copilot.getCopilotId() + ".json")));
+                zip.write(copilot.getContent().getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+        zip.finish();
+        zip.flush();
+    }
+
+    private record StageVersion(String stageId, long version) {
+    }
+}
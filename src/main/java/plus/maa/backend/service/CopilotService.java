@@ -1,6 +1,7 @@
 package plus.maa.backend.service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.Sets;
 import jakarta.annotation.PostConstruct;
@@ -15,9 +16,12 @@ import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
 import org.springframework.util.ObjectUtils;
+import plus.maa.backend.common.utils.InFlightCoalescer;
+import plus.maa.backend.common.utils.JsonSchemaValidator;
 import plus.maa.backend.common.utils.converter.CopilotConverter;
 import plus.maa.backend.controller.request.copilot.CopilotCUDRequest;
 import plus.maa.backend.controller.request.copilot.CopilotDTO;
@@ -30,7 +34,6 @@ import plus.maa.backend.controller.response.copilot.CopilotPageInfo;
 import plus.maa.backend.repository.*;
 import plus.maa.backend.repository.entity.CommentsArea;
 import plus.maa.backend.repository.entity.Copilot;
-import plus.maa.backend.repository.entity.MaaUser;
 import plus.maa.backend.repository.entity.Rating;
 import plus.maa.backend.service.model.RatingCache;
 import plus.maa.backend.service.model.RatingType;
@@ -60,11 +63,22 @@ public class CopilotService {
     private final ObjectMapper mapper;
     private final ArkLevelService levelService;
     private final RedisCache redisCache;
-    private final UserRepository userRepository;
     private final CommentsAreaRepository commentsAreaRepository;
 
+    private final SequenceService sequenceService;
+    private final CopilotContentService contentService;
+    private final CopilotExportService exportService;
+
     private final CopilotConverter copilotConverter;
-    private final AtomicLong copilotIncrementId = new AtomicLong(20000);
+    private final JsonSchemaValidator jsonSchemaValidator;
+    private final SensitiveWordService sensitiveWordService;
+    private final HeavyHitterService heavyHitterService;
+    private final ConcurrencyLimitService concurrencyLimitService;
+    private final UserNameService userNameService;
+
+    // 作业ID序列，多实例部署时各实例按号段分配，互不重复
+    private static final String COPILOT_ID_SEQUENCE = "copilotId";
+    private static final int COPILOT_ID_BLOCK_SIZE = 10;
 
     /*
         首页分页查询缓存配置
@@ -77,15 +91,19 @@ public class CopilotService {
             "id", 300L
     );
 
+    // 进行中的相同分页查询只访问一次数据库
+    private final InFlightCoalescer<QueryKey, CopilotPageInfo> queryCoalescer = new InFlightCoalescer<>();
+
     @PostConstruct
     public void init() {
-        // 初始化copilotId, 从数据库中获取最大的copilotId
+        // 初始化copilotId序列, 保证不小于数据库中最大的copilotId
         // 如果数据库中没有数据, 则从20000开始
-        copilotRepository.findFirstByOrderByCopilotIdDesc()
+        long last = copilotRepository.findFirstByOrderByCopilotIdDesc()
                 .map(Copilot::getCopilotId)
-                .ifPresent(last -> copilotIncrementId.set(last + 1));
+                .orElse(19999L);
+        sequenceService.ensureAtLeast(COPILOT_ID_SEQUENCE, last);
 
-        log.info("作业自增ID初始化完成: {}", copilotIncrementId.get());
+        log.info("作业自增ID初始化完成, 当前最大ID: {}", last);
     }
 
     /**
@@ -125,7 +143,8 @@ public class CopilotService {
     }
 
     /**
-     * 将content解析为CopilotDTO
+     * 将content解析为CopilotDTO <br>
+     * content 只解析一次，schema 校验、敏感词检测和绑定都基于同一棵 json 树完成
      *
      * @param content content
      * @return CopilotDTO
@@ -133,13 +152,34 @@ public class CopilotService {
     private CopilotDTO parseToCopilotDto(String content) {
         Assert.notNull(content, "作业内容不可为空");
         try {
-            return mapper.readValue(content, CopilotDTO.class);
+            JsonNode tree = mapper.readTree(content);
+            jsonSchemaValidator.validate(JsonSchemaValidator.COPILOT_SCHEMA_JSON, tree);
+            checkSensitiveWords(tree.get("doc"));
+            return mapper.treeToValue(tree, CopilotDTO.class);
         } catch (JsonProcessingException e) {
             log.error("解析copilot失败", e);
             throw new MaaResultException("解析copilot失败");
         }
     }
 
+    /**
+     * 检测作业描述中的文本字段是否包含敏感词
+     */
+    private void checkSensitiveWords(@Nullable JsonNode doc) {
+        if (doc == null || !doc.isObject()) {
+            return;
+        }
+        List<String> matchAll = new ArrayList<>();
+        doc.elements().forEachRemaining(field -> {
+            if (field.isTextual()) {
+                matchAll.addAll(sensitiveWordService.matchAll(field.textValue()));
+            }
+        });
+        if (!matchAll.isEmpty()) {
+            throw new MaaResultException(HttpStatus.BAD_REQUEST.value(), "包含敏感词：" + matchAll);
+        }
+    }
+
 
     private Pattern caseInsensitive(String s) {
         return Pattern.compile(s, Pattern.CASE_INSENSITIVE);
@@ -157,9 +197,12 @@ public class CopilotService {
         // 将其转换为数据库存储对象
         Copilot copilot = copilotConverter.toCopilot(
                 copilotDTO, loginUserId,
-                LocalDateTime.now(), copilotIncrementId.getAndIncrement(),
+                LocalDateTime.now(), sequenceService.next(COPILOT_ID_SEQUENCE, COPILOT_ID_BLOCK_SIZE),
                 content);
+        // 先写入原始数据，保证作业可见时原始数据已经存在
+        contentService.save(copilot.getCopilotId(), content);
         copilotRepository.insert(copilot);
+        exportService.invalidateStage(copilot.getStageName());
         return copilot.getCopilotId();
     }
 
@@ -167,35 +210,66 @@ public class CopilotService {
      * 根据作业id删除作业
      */
     public void delete(String loginUserId, CopilotCUDRequest request) {
-        copilotRepository.findByCopilotId(request.getId()).ifPresent(copilot -> {
-            Assert.state(Objects.equals(copilot.getUploaderId(), loginUserId), "您无法修改不属于您的作业");
-            copilot.setDelete(true);
-            copilotRepository.save(copilot);
-            /*
-             * 删除作业时，如果被删除的项在 Redis 首页缓存中存在，则清空对应的首页缓存
-             * 新增作业就不必，因为新作业显然不会那么快就登上热度榜和浏览量榜
-             */
-            for (var kv : HOME_PAGE_CACHE_CONFIG.entrySet()) {
-                String key = String.format("home:%s:copilotIds", kv.getKey());
-                String pattern = String.format("home:%s:*", kv.getKey());
-                if (redisCache.valueMemberInSet(key, copilot.getCopilotId())) {
-                    redisCache.removeCacheByPattern(pattern);
-                }
+        Long copilotId = request.getId();
+        Update update = new Update()
+                .set("delete", true)
+                .set("deleteTime", LocalDateTime.now());
+        Copilot previous = updateOwnCopilot(loginUserId, copilotId, update, "您无法修改不属于您的作业");
+        if (previous == null) {
+            return;
+        }
+        exportService.invalidateStage(previous.getStageName());
+        /*
+         * 删除作业时，如果被删除的项在 Redis 首页缓存中存在，则清空对应的首页缓存
+         * 新增作业就不必，因为新作业显然不会那么快就登上热度榜和浏览量榜
+         */
+        for (var kv : HOME_PAGE_CACHE_CONFIG.entrySet()) {
+            String key = String.format("home:%s:copilotIds", kv.getKey());
+            String pattern = String.format("home:%s:*", kv.getKey());
+            if (redisCache.valueMemberInSet(key, copilotId)) {
+                redisCache.removeCacheByPattern(pattern);
             }
-        });
+        }
+    }
+
+    /**
+     * 以作业ID和上传者为条件直接更新指定字段，不读取整个作业 <br>
+     * 未命中时再确认作业是否存在：存在说明不属于该用户，抛出异常；不存在则返回 null
+     *
+     * @return 更新前的作业，只包含关卡名；作业未更新时返回 null
+     */
+    @Nullable
+    private Copilot updateOwnCopilot(String loginUserId, Long copilotId, Update update, String forbiddenMessage) {
+        Query query = Query.query(Criteria.where("copilotId").is(copilotId).and("uploaderId").is(loginUserId));
+        // 只取回关卡名，用于使导出缓存失效
+        query.fields().include("stageName");
+        Copilot previous = mongoTemplate.findAndModify(query, update, Copilot.class);
+        if (previous != null) {
+            return previous;
+        }
+        Assert.state(!copilotRepository.existsCopilotsByCopilotId(copilotId), forbiddenMessage);
+        return null;
     }
 
     /**
      * 指定查询
+     *
+     * @param ipAddress 请求方的 IP，已登录用户的访问量同样按 IP 判断是否请求量异常
      */
-    public Optional<CopilotInfo> getCopilotById(String userIdOrIpAddress, Long id) {
+    public Optional<CopilotInfo> getCopilotById(String userIdOrIpAddress, String ipAddress, Long id) {
+        return concurrencyLimitService.execute("copilot-get",
+                () -> getCopilotByIdFromDatabase(userIdOrIpAddress, ipAddress, id));
+    }
+
+    private Optional<CopilotInfo> getCopilotByIdFromDatabase(String userIdOrIpAddress, String ipAddress, Long id) {
         // 根据ID获取作业, 如作业不存在则抛出异常返回
         Optional<Copilot> copilotOptional = copilotRepository.findByCopilotIdAndDeleteIsFalse(id);
         return copilotOptional.map(copilot -> {
-            // 60分钟内限制同一个用户对访问量的增加
-            RatingCache cache = redisCache.getCache("views:" + userIdOrIpAddress, RatingCache.class);
-            if (Objects.isNull(cache) || Objects.isNull(cache.getCopilotIds()) ||
-                    !cache.getCopilotIds().contains(id)) {
+            // 60分钟内限制同一个用户对访问量的增加，请求量异常的 IP 不计入访问量，也不为其创建缓存
+            boolean countView = !heavyHitterService.isHeavyHitter(ipAddress);
+            RatingCache cache = countView ? redisCache.getCache("views:" + userIdOrIpAddress, RatingCache.class) : null;
+            if (countView && (Objects.isNull(cache) || Objects.isNull(cache.getCopilotIds()) ||
+                    !cache.getCopilotIds().contains(id))) {
                 Query query = Query.query(Criteria.where("copilotId").is(id));
                 Update update = new Update();
                 // 增加一次views
@@ -211,7 +285,8 @@ public class CopilotService {
                             }, 60, TimeUnit.MINUTES);
                 }
             }
-            Map<String, MaaUser> maaUser = userRepository.findByUsersId(List.of(copilot.getUploaderId()));
+            // 只有详情需要原始数据
+            copilot.setContent(contentService.load(copilot.getCopilotId()));
 
             // 新评分系统
             RatingType ratingType = ratingRepository.findByTypeAndKeyAndUserId(Rating.KeyType.COPILOT,
@@ -219,7 +294,7 @@ public class CopilotService {
                     .map(Rating::getRating)
                     .orElse(null);
             // 用户点进作业会显示点赞信息
-            return formatCopilot(copilot, ratingType, maaUser.get(copilot.getUploaderId()).getUserName(),
+            return formatCopilot(copilot, ratingType, userNameService.getUserName(copilot.getUploaderId()),
                     commentsAreaRepository.countByCopilotIdAndDelete(copilot.getCopilotId(), false));
         });
     }
@@ -257,6 +332,43 @@ public class CopilotService {
             }
         }
 
+        // 未命中缓存时才访问数据库，相同的查询合并为一次，并受并发上限保护
+        return queryCoalescer.execute(QueryKey.of(userId, request), () -> concurrencyLimitService.execute("copilot-query",
+                () -> queriesCopilotFromDatabase(userId, request, cacheKey.get(), setKey.get(), cacheTimeout.get())));
+    }
+
+    /**
+     * 归一化的分页查询条件，只包含影响查询结果的字段，查询结果相同的请求 key 相同
+     */
+    private record QueryKey(int page, int limit, @Nullable String levelKeyword, @Nullable String operator,
+                            @Nullable String document, @Nullable String uploaderId, boolean desc,
+                            @Nullable String orderBy) {
+
+        static QueryKey of(@Nullable String userId, CopilotQueriesRequest request) {
+            String uploaderId = StringUtils.defaultIfBlank(request.getUploaderId(), null);
+            // 查看自己时以实际的用户 id 区分，未登录则不限制上传者
+            if ("me".equals(uploaderId)) {
+                uploaderId = StringUtils.defaultIfEmpty(userId, null);
+            }
+            return new QueryKey(
+                    request.getPage() > 0 ? request.getPage() : 1,
+                    request.getLimit() > 0 ? request.getLimit() : 10,
+                    StringUtils.defaultIfBlank(request.getLevelKeyword(), null),
+                    StringUtils.defaultIfBlank(request.getOperator(), null),
+                    StringUtils.defaultIfBlank(request.getDocument(), null),
+                    uploaderId,
+                    request.isDesc(),
+                    StringUtils.defaultIfBlank(request.getOrderBy(), null)
+            );
+        }
+    }
+
+    /**
+     * 从数据库分页查询，cacheKey 不为空时缓存结果
+     */
+    private CopilotPageInfo queriesCopilotFromDatabase(@Nullable String userId, CopilotQueriesRequest request,
+                                                      @Nullable String cacheKey, @Nullable String setKey,
+                                                      long cacheTimeout) {
         Sort.Order sortOrder = new Sort.Order(
                 request.isDesc() ? Sort.Direction.DESC : Sort.Direction.ASC,
                 Optional.ofNullable(request.getOrderBy())
@@ -348,7 +460,7 @@ public class CopilotService {
 
         // 填充前端所需信息
         Set<Long> copilotIds = copilots.stream().map(Copilot::getCopilotId).collect(Collectors.toSet());
-        Map<String, MaaUser> maaUsers = userRepository.findByUsersId(copilots.stream().map(Copilot::getUploaderId).toList());
+        Map<String, String> userNames = userNameService.getUserNames(copilots.stream().map(Copilot::getUploaderId).toList());
         Map<Long, Long> commentsCount = commentsAreaRepository.findByCopilotIdInAndDelete(copilotIds, false)
                 .collect(Collectors.groupingBy(CommentsArea::getCopilotId, Collectors.counting()));
 
@@ -356,7 +468,7 @@ public class CopilotService {
         // 反正目前首页和搜索不会直接展示当前用户有没有点赞，干脆直接不查，要用户点进作业才显示自己是否点赞
         List<CopilotInfo> infos = copilots.stream().map(copilot ->
                 formatCopilot(copilot, null,
-                        maaUsers.get(copilot.getUploaderId()).getUserName(),
+                        userNames.getOrDefault(copilot.getUploaderId(), UserNameService.UNKNOWN_USER_NAME),
                         commentsCount.get(copilot.getCopilotId())))
                 .toList();
 
@@ -374,11 +486,11 @@ public class CopilotService {
                 .setPage(pageNumber);
 
         // 决定是否缓存
-        if (cacheKey.get() != null) {
+        if (cacheKey != null) {
             // 记录存在的作业id
-            redisCache.addSet(setKey.get(), copilotIds, cacheTimeout.get());
+            redisCache.addSet(setKey, copilotIds, cacheTimeout);
             // 缓存数据
-            redisCache.setCache(cacheKey.get(), data, cacheTimeout.get());
+            redisCache.setCache(cacheKey, data, cacheTimeout);
         }
         return data;
     }
@@ -391,13 +503,36 @@ public class CopilotService {
     public void update(String loginUserId, CopilotCUDRequest copilotCUDRequest) {
         String content = copilotCUDRequest.getContent();
         Long id = copilotCUDRequest.getId();
-        copilotRepository.findByCopilotId(id).ifPresent(copilot -> {
-            CopilotDTO copilotDTO = correctCopilot(parseToCopilotDto(content));
-            Assert.state(Objects.equals(copilot.getUploaderId(), loginUserId), "您无法修改不属于您的作业");
-            copilot.setUploadTime(LocalDateTime.now());
-            copilotConverter.updateCopilotFromDto(copilotDTO, content, copilot);
-            copilotRepository.save(copilot);
-        });
+        CopilotDTO copilotDTO = correctCopilot(parseToCopilotDto(content));
+        // 只覆盖作业内容相关的字段，访问量、评分等字段不受影响
+        Copilot changes = new Copilot();
+        copilotConverter.updateCopilotFromDto(copilotDTO, content, changes);
+        Update update = new Update()
+                .set("uploadTime", LocalDateTime.now())
+                .set("delete", changes.isDelete())
+                .set("difficulty", changes.getDifficulty())
+                .set("notification", changes.getNotification());
+        setIfNotNull(update, "stageName", changes.getStageName());
+        setIfNotNull(update, "minimumRequired", changes.getMinimumRequired());
+        setIfNotNull(update, "opers", changes.getOpers());
+        setIfNotNull(update, "groups", changes.getGroups());
+        setIfNotNull(update, "actions", changes.getActions());
+        setIfNotNull(update, "doc", changes.getDoc());
+        Copilot previous = updateOwnCopilot(loginUserId, id, update, "您无法修改不属于您的作业");
+        if (previous != null) {
+            contentService.save(id, content);
+            // 关卡可能被修改，新旧关卡的导出缓存都失效
+            exportService.invalidateStage(previous.getStageName());
+            if (!Objects.equals(previous.getStageName(), changes.getStageName())) {
+                exportService.invalidateStage(changes.getStageName());
+            }
+        }
+    }
+
+    private static void setIfNotNull(Update update, String key, @Nullable Object value) {
+        if (value != null) {
+            update.set(key, value);
+        }
     }
 
     /**
@@ -535,11 +670,7 @@ public class CopilotService {
     }
 
     public void notificationStatus(String userId, Long copilotId, boolean status) {
-        Optional<Copilot> copilotOptional = copilotRepository.findByCopilotId(copilotId);
-        Assert.isTrue(copilotOptional.isPresent(), "copilot不存在");
-        Copilot copilot = copilotOptional.get();
-        Assert.isTrue(Objects.equals(userId, copilot.getUploaderId()), "您没有权限修改");
-        copilot.setNotification(status);
-        copilotRepository.save(copilot);
+        Assert.isTrue(updateOwnCopilot(userId, copilotId, new Update().set("notification", status), "您没有权限修改") != null,
+                "copilot不存在");
     }
 }
\ No newline at end of file
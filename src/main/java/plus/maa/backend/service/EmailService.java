@@ -1,24 +1,21 @@
 package plus.maa.backend.service;
 
-import cn.hutool.extra.mail.MailAccount;
-import jakarta.annotation.PostConstruct;
-import jakarta.annotation.Resource;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.logging.log4j.util.Strings;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.context.annotation.Lazy;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import plus.maa.backend.common.bo.EmailBusinessObject;
 import plus.maa.backend.config.external.MaaCopilotProperties;
-import plus.maa.backend.config.external.Mail;
 import plus.maa.backend.controller.response.MaaResultException;
 import plus.maa.backend.repository.RedisCache;
+import plus.maa.backend.repository.entity.OutboxMail;
 import plus.maa.backend.service.model.CommentNotification;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -42,30 +39,7 @@ public class EmailService {
 
     private final RedisCache redisCache;
 
-    private final MailAccount MAIL_ACCOUNT = new MailAccount();
-
-    // 注入自身代理类的延迟加载代理类
-    @Lazy
-    @Resource
-    private EmailService emailService;
-
-    /**
-     * 初始化邮件账户信息
-     */
-    @PostConstruct
-    private void initMailAccount() {
-        Mail mail = maaCopilotProperties.getMail();
-        MAIL_ACCOUNT
-                .setHost(mail.getHost())
-                .setPort(mail.getPort())
-                .setFrom(mail.getFrom())
-                .setUser(mail.getUser())
-                .setPass(mail.getPass())
-                .setSslEnable(mail.getSsl())
-                .setStarttlsEnable(mail.getStarttls());
-
-        log.info("邮件账户信息初始化完成: {}", MAIL_ACCOUNT);
-    }
+    private final MailOutboxService mailOutboxService;
 
     /**
      * 发送验证码
@@ -82,20 +56,15 @@ public class EmailService {
             // 设置失败，说明 key 已存在
             throw new MaaResultException(403, String.format("发送验证码的请求至少需要间隔 %d 秒", timeout));
         }
-        // 调用注入的代理类执行异步任务
-        emailService.asyncSendVCode(email);
-    }
-
-    @Async
-    protected void asyncSendVCode(String email) {
         // 6位随机数验证码
         String vcode = RandomStringUtils.random(6, true, true).toUpperCase();
         if (flagNoSend) {
             log.debug("vcode is " + vcode);
             log.warn("Email not sent, no-send enabled");
         } else {
+            // 只写入发件箱，由 MailOutboxService 在后台发送
             EmailBusinessObject.builder()
-                    .setMailAccount(MAIL_ACCOUNT)
+                    .setSender(outboxSender(OutboxMail.PRIORITY_HIGH))
                     .setEmail(email)
                     .sendVerificationCodeMessage(vcode);
         }
@@ -115,16 +84,8 @@ public class EmailService {
         }
     }
 
-    @Async
     public void sendCommentNotification(String email, CommentNotification commentNotification) {
-        int limit = 25;
-
-        String title = commentNotification.getTitle();
-        if (Strings.isNotBlank(title)) {
-            if (title.length() > limit) {
-                title = title.substring(0, limit) + "....";
-            }
-        }
+        String title = abbreviateTitle(commentNotification.getTitle());
 
         Map<String, String> map = new HashMap<>();
         map.put("authorName", commentNotification.getAuthorName());
@@ -135,9 +96,51 @@ public class EmailService {
         map.put("reMessage", commentNotification.getReMessage());
         EmailBusinessObject.builder()
                 .setTitle("收到新回复 来自用户@" + commentNotification.getReName() + " Re: " + map.get("title"))
-                .setMailAccount(MAIL_ACCOUNT)
+                .setSender(outboxSender(OutboxMail.PRIORITY_NORMAL))
                 .setEmail(email)
                 .sendCommentNotification(map);
 
     }
+
+    /**
+     * 将一段时间内收到的多条回复合并为一封邮件
+     *
+     * @param count                回复总数
+     * @param commentNotifications 邮件中列出的回复，可能少于 count
+     */
+    public void sendCommentNotificationDigest(String email, String authorName, long count,
+                                              List<CommentNotification> commentNotifications) {
+        List<Map<String, String>> items = new ArrayList<>(commentNotifications.size());
+        for (CommentNotification commentNotification : commentNotifications) {
+            Map<String, String> item = new HashMap<>();
+            item.put("reName", commentNotification.getReName());
+            item.put("date", commentNotification.getDate());
+            item.put("title", abbreviateTitle(commentNotification.getTitle()));
+            item.put("reMessage", commentNotification.getReMessage());
+            items.add(item);
+        }
+
+        Map<String, Object> map = new HashMap<>();
+        map.put("authorName", authorName);
+        map.put("forntEndLink", maaCopilotProperties.getInfo().getFrontendDomain());
+        map.put("count", count);
+        map.put("notifications", items);
+        EmailBusinessObject.builder()
+                .setTitle("收到 " + count + " 条新回复")
+                .setSender(outboxSender(OutboxMail.PRIORITY_NORMAL))
+                .setEmail(email)
+                .sendCommentNotificationDigest(map);
+    }
+
+    private static String abbreviateTitle(String title) {
+        int limit = 25;
+        if (Strings.isNotBlank(title) && title.length() > limit) {
+            return title.substring(0, limit) + "....";
+        }
+        return title;
+    }
+
+    private EmailBusinessObject.Sender outboxSender(int priority) {
+        return (tos, subject, content, isHtml) -> mailOutboxService.enqueue(tos, subject, content, isHtml, priority);
+    }
 }
@@ -1,16 +1,33 @@
 package plus.maa.backend.service;
 
 
-import com.mongodb.client.gridfs.GridFSFindIterable;
+import com.google.common.collect.Iterators;
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoWriteException;
 import com.mongodb.client.gridfs.model.GridFSFile;
+import jakarta.annotation.PostConstruct;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.data.mongodb.gridfs.GridFsCriteria;
 import org.springframework.data.mongodb.gridfs.GridFsOperations;
+import org.springframework.data.mongodb.gridfs.GridFsUpload;
+import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
 import org.springframework.web.multipart.MultipartException;
@@ -18,14 +35,22 @@ import org.springframework.web.multipart.MultipartFile;
 import plus.maa.backend.controller.file.ImageDownloadDTO;
 import plus.maa.backend.controller.response.MaaResultException;
 import plus.maa.backend.repository.RedisCache;
+import plus.maa.backend.repository.entity.UploadFile;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
-import java.util.regex.Pattern;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -34,11 +59,105 @@ import java.util.zip.ZipOutputStream;
  * Date  2023-04-16 23:21
  */
 
+@Slf4j
 @RequiredArgsConstructor
 @Service
 public class FileService {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // 打包下载时预读的文件数量
+    private static final int PREFETCH_SIZE = 4;
+    // 按 id 批量读取文件和删除记录的批大小
+    private static final int BATCH_SIZE = 500;
+    // 本身已经压缩过的文件类型
+    private static final Set<String> COMPRESSED_FILE_TYPES = Set.of(
+            ".png", ".jpg", ".jpeg", ".gif", ".webp", ".zip", ".gz", ".7z", ".mp4"
+    );
+
     private final GridFsOperations gridFsOperations;
+    private final MongoTemplate mongoTemplate;
     private final RedisCache redisCache;
+    private final MigrationService migrationService;
+
+    @PostConstruct
+    public void init() {
+        // 文件内容按哈希去重，历史文件没有哈希字段，因此使用稀疏索引
+        mongoTemplate.indexOps("fs.files")
+                .ensureIndex(new Index().on("metadata.sha256", Sort.Direction.ASC).unique().sparse());
+    }
+
+    /**
+     * 历史文件的元数据迁移在启动完成后于后台执行，且只执行一次 <br>
+     * 迁移完成前，尚未迁移的历史文件不会出现在数据集下载中
+     */
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrate() {
+        migrationService.runOnce("upload-file-metadata", this::migrateUploadMetadata);
+    }
+
+    /**
+     * 将保存在 fs.files 元数据及其 references 中的上传记录拆分为 maa_upload_file 中的独立记录 <br>
+     * 记录 id 由文件 id 派生，重复执行不会产生重复记录；引用数在旧值（不含根元数据本身）上加一，
+     * 迁移期间新上传增加的引用不会丢失
+     */
+    private void migrateUploadMetadata() {
+        Query query = Query.query(GridFsCriteria.whereMetaData("blob").ne(true));
+        AtomicInteger migrated = new AtomicInteger();
+        try (Stream<Document> files = mongoTemplate.stream(query, Document.class, "fs.files")) {
+            files.forEach(file -> {
+                if (!(file.get("_id") instanceof ObjectId fileId)) {
+                    return;
+                }
+                Document metadata = file.get("metadata", Document.class);
+                if (metadata == null) {
+                    metadata = new Document();
+                }
+                String sha256 = metadata.getString("sha256");
+                List<UploadFile> uploads = new ArrayList<>();
+                uploads.add(toUploadFile(metadata, file.getDate("uploadDate"))
+                        .setId(fileId.toHexString()));
+                List<?> references = metadata.get("references", List.class);
+                if (references != null) {
+                    for (int i = 0; i < references.size(); i++) {
+                        if (references.get(i) instanceof Document reference) {
+                            uploads.add(toUploadFile(reference, reference.getDate("uploadDate"))
+                                    .setId(fileId.toHexString() + "-" + (i + 1)));
+                        }
+                    }
+                }
+                BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UploadFile.class);
+                for (UploadFile upload : uploads) {
+                    upload.setFileId(fileId).setSha256(sha256).setFileName(file.getString("filename"));
+                    bulk.replaceOne(Query.query(Criteria.where("_id").is(upload.getId())), upload,
+                            FindAndReplaceOptions.options().upsert());
+                }
+                bulk.execute();
+                mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(fileId)
+                                .and("metadata.blob").ne(true)),
+                        new Update()
+                                .set("metadata.blob", true)
+                                .inc("metadata.referenceCount", 1)
+                                .unset("metadata.references"),
+                        "fs.files");
+                migrated.incrementAndGet();
+            });
+        }
+        log.info("上传文件元数据迁移完成，共 {} 个文件", migrated.get());
+    }
+
+    private static UploadFile toUploadFile(Document metadata, Date uploadDate) {
+        return new UploadFile()
+                .setVersion(metadata.getString("version"))
+                .setAntecedentVersion(metadata.getString("antecedentVersion"))
+                .setLabel(metadata.getString("label"))
+                .setClassification(metadata.getString("classification"))
+                .setType(metadata.getString("type"))
+                .setIp(metadata.getString("ip"))
+                .setTypeLower(StringUtils.lowerCase(metadata.getString("type")))
+                .setClassificationLower(StringUtils.lowerCase(metadata.getString("classification")))
+                .setLabelLower(StringUtils.lowerCase(metadata.getString("label")))
+                .setUploadDate(uploadDate);
+    }
 
     public void uploadFile(MultipartFile file,
                            String type,
@@ -65,29 +184,119 @@ public class FileService {
             antecedentVersion = split[1];
         }
 
-        Document document = new Document();
-        document.put("version", version);
-        document.put("antecedentVersion", antecedentVersion);
-        document.put("label", label);
-        document.put("classification", classification);
-        document.put("type", type);
-        document.put("ip", ip);
-
         int index = file.getOriginalFilename().lastIndexOf(".");
         String fileType = "";
         if (index != -1) {
             fileType = file.getOriginalFilename().substring(index);
         }
 
-        String fileName = "Maa-" + UUID.randomUUID().toString().replaceAll("-", "") + fileType;
-
         try {
-            gridFsOperations.store(file.getInputStream(), fileName, document);
+            // 以内容哈希作为文件标识，相同内容只保存一份
+            String hash = sha256(file);
+            String fileName = "Maa-" + hash + fileType;
+            ObjectId fileId = storeOrReference(file, hash, fileName);
+
+            UploadFile upload = new UploadFile()
+                    .setFileId(fileId)
+                    .setSha256(hash)
+                    .setFileName(fileName)
+                    .setVersion(version)
+                    .setAntecedentVersion(antecedentVersion)
+                    .setLabel(label)
+                    .setClassification(classification)
+                    .setType(type)
+                    .setIp(ip)
+                    .setTypeLower(StringUtils.lowerCase(type))
+                    .setClassificationLower(StringUtils.lowerCase(classification))
+                    .setLabelLower(StringUtils.lowerCase(label))
+                    .setUploadDate(new Date());
+            try {
+                mongoTemplate.insert(upload);
+            } catch (RuntimeException e) {
+                releaseReferences(fileId, 1);
+                throw e;
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * 已存在相同内容的文件时增加其引用数，否则保存新文件
+     *
+     * @return 上传记录指向的 GridFS 文件 id
+     */
+    private ObjectId storeOrReference(MultipartFile file, String hash, String fileName) throws IOException {
+        for (int attempt = 0; attempt < 3; attempt++) {
+            ObjectId existing = addReference(hash);
+            if (existing != null) {
+                return existing;
+            }
+            ObjectId id = new ObjectId();
+            try {
+                gridFsOperations.store(GridFsUpload.fromStream(file.getInputStream())
+                        .id(id)
+                        .filename(fileName)
+                        .metadata(new Document("sha256", hash)
+                                .append("blob", true)
+                                .append("referenceCount", 1))
+                        .build());
+                return id;
+            } catch (MongoWriteException e) {
+                if (e.getError().getCategory() != ErrorCategory.DUPLICATE_KEY) {
+                    throw e;
+                }
+                // 相同内容被并发上传，清理本次写入的分片后改为增加引用
+                mongoTemplate.remove(Query.query(Criteria.where("files_id").is(id)), "fs.chunks");
+            }
+        }
+        throw new IllegalStateException("文件保存冲突，请重试");
+    }
+
+    @Nullable
+    private ObjectId addReference(String hash) {
+        Query query = Query.query(GridFsCriteria.whereMetaData("sha256").is(hash));
+        query.fields().include("_id");
+        Document file = mongoTemplate.findAndModify(query, new Update().inc("metadata.referenceCount", 1),
+                Document.class, "fs.files");
+        return file == null ? null : file.getObjectId("_id");
+    }
+
+    /**
+     * 减少文件的引用数，归零时删除文件 <br>
+     * 删除带上引用数条件，期间被重新引用的文件不会被删除
+     */
+    private void releaseReferences(ObjectId fileId, int count) {
+        Query query = Query.query(Criteria.where("_id").is(fileId));
+        query.fields().include("metadata.referenceCount");
+        Document file = mongoTemplate.findAndModify(query, new Update().inc("metadata.referenceCount", -count),
+                FindAndModifyOptions.options().returnNew(true), Document.class, "fs.files");
+        if (file == null) {
+            return;
+        }
+        Document metadata = file.get("metadata", Document.class);
+        Number remaining = metadata == null ? null : metadata.get("referenceCount", Number.class);
+        if (remaining != null && remaining.longValue() <= 0) {
+            // 尚未迁移的历史文件还有未计入的上传记录，不能删除
+            gridFsOperations.delete(Query.query(Criteria.where("_id").is(fileId)
+                    .and("metadata.blob").is(true)
+                    .and("metadata.referenceCount").lte(0)));
+        }
+    }
+
+    private String sha256(MultipartFile file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (InputStream inputStream = new DigestInputStream(file.getInputStream(), digest)) {
+            inputStream.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
 
     public void downloadDateFile(String date, String beLocated, boolean delete, HttpServletResponse response) {
         SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd");
@@ -105,19 +314,14 @@ public class FileService {
         }
 
         if (StringUtils.isBlank(beLocated) || Objects.equals("after", beLocated.toLowerCase())) {
-            query = new Query(Criteria.where("metadata").gte(d));
+            query = new Query(Criteria.where("uploadDate").gte(d));
         } else {
             query = new Query(Criteria.where("uploadDate").lte(d));
         }
-        GridFSFindIterable files = gridFsOperations.find(query);
 
         response.addHeader("Content-Disposition", "attachment;filename=" + System.currentTimeMillis() + ".zip");
 
-        gzip(response, files);
-
-        if (delete) {
-            gridFsOperations.delete(query);
-        }
+        exportUploads(query, delete, response);
     }
 
 
@@ -127,11 +331,11 @@ public class FileService {
 
 
         //图片类型
-        criteriaSet.add(GridFsCriteria.whereMetaData("type").regex(Pattern.compile(imageDownloadDTO.getType(), Pattern.CASE_INSENSITIVE)));
+        criteriaSet.add(Criteria.where("typeLower").is(imageDownloadDTO.getType().toLowerCase()));
 
         //指定下载某个类型的图片
         if (StringUtils.isNotBlank(imageDownloadDTO.getClassification())) {
-            criteriaSet.add(GridFsCriteria.whereMetaData("classification").regex(Pattern.compile(imageDownloadDTO.getClassification(), Pattern.CASE_INSENSITIVE)));
+            criteriaSet.add(Criteria.where("classificationLower").is(imageDownloadDTO.getClassification().toLowerCase()));
         }
 
         //指定版本或指定范围版本
@@ -139,36 +343,64 @@ public class FileService {
             List<String> version = imageDownloadDTO.getVersion();
 
             if (version.size() == 1) {
+                String mainVersion = version.get(0);
                 String antecedentVersion = null;
-                if (version.get(0).contains("-")) {
-                    String[] split = version.get(0).split("-");
+                if (mainVersion.contains("-")) {
+                    String[] split = mainVersion.split("-");
+                    mainVersion = split[0];
                     antecedentVersion = split[1];
                 }
-                criteriaSet.add(GridFsCriteria.whereMetaData("version").is(version.get(0)).and("antecedentVersion").is(antecedentVersion));
+                // 与上传时的拆分方式保持一致
+                criteriaSet.add(Criteria.where("version").is(mainVersion)
+                        .and("antecedentVersion").is(antecedentVersion));
 
             } else if (version.size() == 2) {
-                criteriaSet.add(GridFsCriteria.whereMetaData("version").gte(version.get(0)).lte(version.get(1)));
+                criteriaSet.add(Criteria.where("version").gte(version.get(0)).lte(version.get(1)));
             }
         }
 
         if (StringUtils.isNotBlank(imageDownloadDTO.getLabel())) {
-            criteriaSet.add(GridFsCriteria.whereMetaData("label").regex(Pattern.compile(imageDownloadDTO.getLabel(), Pattern.CASE_INSENSITIVE)));
+            criteriaSet.add(Criteria.where("labelLower").is(imageDownloadDTO.getLabel().toLowerCase()));
         }
 
         Criteria criteria = new Criteria().andOperator(criteriaSet);
         query.addCriteria(criteria);
 
-
-        GridFSFindIterable gridFSFiles = gridFsOperations.find(query);
-
         response.addHeader("Content-Disposition", "attachment;filename=" + "Maa-" + imageDownloadDTO.getType() + ".zip");
 
-        gzip(response, gridFSFiles);
+        exportUploads(query, imageDownloadDTO.isDelete(), response);
+    }
 
-        if (imageDownloadDTO.isDelete()) {
-            gridFsOperations.delete(query);
+    /**
+     * 打包下载匹配的上传记录指向的文件，相同内容只打包一次
+     *
+     * @param delete 是否在下载后删除这些上传记录，文件在不再被引用时删除
+     */
+    private void exportUploads(Query query, boolean delete, HttpServletResponse response) {
+        query.fields().include("_id", "fileId");
+        List<Object> uploadIds = new ArrayList<>();
+        // 文件 id -> 匹配的上传记录数
+        Map<ObjectId, Integer> references = new LinkedHashMap<>();
+        try (Stream<Document> uploads = mongoTemplate.stream(query, Document.class,
+                mongoTemplate.getCollectionName(UploadFile.class))) {
+            uploads.forEach(upload -> {
+                uploadIds.add(upload.get("_id"));
+                if (upload.get("fileId") instanceof ObjectId fileId) {
+                    references.merge(fileId, 1, Integer::sum);
+                }
+            });
         }
 
+        Iterator<GridFSFile> files = Iterators.concat(Iterators.transform(
+                Iterators.partition(references.keySet().iterator(), BATCH_SIZE),
+                batch -> gridFsOperations.find(Query.query(Criteria.where("_id").in(batch))).iterator()));
+        gzip(response, files);
+
+        if (delete) {
+            Iterators.partition(uploadIds.iterator(), BATCH_SIZE).forEachRemaining(batch ->
+                    mongoTemplate.remove(Query.query(Criteria.where("_id").in(batch)), UploadFile.class));
+            references.forEach(this::releaseReferences);
+        }
     }
 
     public String disable() {
@@ -199,27 +431,61 @@ public class FileService {
     }
 
 
-    private void gzip(HttpServletResponse response, GridFSFindIterable files) {
-        try (ZipOutputStream zipOutputStream = new ZipOutputStream(response.getOutputStream())) {
-
-            for (GridFSFile file : files) {
-
-                ZipEntry zipEntry = new ZipEntry(file.getFilename());
-                try (InputStream inputStream = gridFsOperations.getResource(file).getInputStream()) {
-                    //添加压缩文件
-                    zipOutputStream.putNextEntry(zipEntry);
+    private void gzip(HttpServletResponse response, Iterator<GridFSFile> iterator) {
+        ExecutorService prefetchExecutor = Executors.newFixedThreadPool(PREFETCH_SIZE);
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(
+                new BufferedOutputStream(response.getOutputStream(), BUFFER_SIZE))) {
 
-                    byte[] bytes = new byte[1024];
-                    int len;
-                    while ((len = inputStream.read(bytes)) != -1) {
-                        zipOutputStream.write(bytes, 0, len);
-                        zipOutputStream.flush();
-                    }
+            // 预读后续的文件，写入当前文件时后面的文件已经在从 GridFS 读取
+            Deque<Future<PrefetchedFile>> prefetched = new ArrayDeque<>();
+            while (iterator.hasNext() || !prefetched.isEmpty()) {
+                while (iterator.hasNext() && prefetched.size() < PREFETCH_SIZE) {
+                    GridFSFile file = iterator.next();
+                    prefetched.add(prefetchExecutor.submit(() -> readFile(file)));
                 }
+                PrefetchedFile file = prefetched.poll().get();
+
+                //添加压缩文件
+                zipOutputStream.putNextEntry(createZipEntry(file));
+                zipOutputStream.write(file.content());
+                zipOutputStream.closeEntry();
+                // 只在文件边界刷新
+                zipOutputStream.flush();
             }
 
-        } catch (IOException e) {
+        } catch (IOException | ExecutionException e) {
             throw new RuntimeException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            prefetchExecutor.shutdownNow();
+        }
+    }
+
+    private PrefetchedFile readFile(GridFSFile file) throws IOException {
+        try (InputStream inputStream = gridFsOperations.getResource(file).getInputStream()) {
+            return new PrefetchedFile(file.getFilename(), inputStream.readAllBytes());
         }
     }
+
+    /**
+     * 已压缩的媒体类型使用 STORED 直接存储，避免重复压缩浪费 CPU
+     */
+    private ZipEntry createZipEntry(PrefetchedFile file) {
+        ZipEntry zipEntry = new ZipEntry(file.filename());
+        int index = file.filename().lastIndexOf(".");
+        if (index != -1 && COMPRESSED_FILE_TYPES.contains(file.filename().substring(index).toLowerCase())) {
+            CRC32 crc = new CRC32();
+            crc.update(file.content());
+            zipEntry.setMethod(ZipEntry.STORED);
+            zipEntry.setSize(file.content().length);
+            zipEntry.setCompressedSize(file.content().length);
+            zipEntry.setCrc(crc.getValue());
+        }
+        return zipEntry;
+    }
+
+    private record PrefetchedFile(String filename, byte[] content) {
+    }
 }
@@ -0,0 +1,72 @@
+package plus.maa.backend.service;
+
+import org.springframework.stereotype.Service;
+import plus.maa.backend.common.utils.HeavyHitterSketch;
+import plus.maa.backend.config.external.HeavyHitter;
+import plus.maa.backend.config.external.MaaCopilotProperties;
+import plus.maa.backend.controller.response.HeavyHittersInfo;
+
+import java.util.List;
+
+/**
+ * 热点客户端统计 <br>
+ * 按 IP 和 IP + 接口两个维度统计窗口内的请求数，内存占用固定，不随客户端数量增长；
+ * 默认只统计不拦截；配置了拦截阈值时，请求数超过阈值的 IP 在限流和访问量统计之前就被拒绝或跳过，不会为其创建 redis 键
+ */
+@Service
+public class HeavyHitterService {
+
+    private final HeavyHitter config;
+    private final HeavyHitterSketch clients;
+    private final HeavyHitterSketch endpoints;
+
+    public HeavyHitterService(MaaCopilotProperties properties) {
+        this.config = properties.getHeavyHitter();
+        long windowMillis = config.getWindowSeconds() * 1000L;
+        this.clients = new HeavyHitterSketch(config.getDepth(), config.getWidth(), windowMillis,
+                config.getSlots(), config.getTopK());
+        this.endpoints = new HeavyHitterSketch(config.getDepth(), config.getWidth(), windowMillis,
+                config.getSlots(), config.getTopK());
+    }
+
+    /**
+     * 记录一次请求
+     *
+     * @param ip       客户端 IP
+     * @param endpoint 请求方法与接口路径模板
+     */
+    public void record(String ip, String endpoint) {
+        if (config.isDisabled()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        endpoints.add(ip + " " + endpoint, now);
+        clients.add(ip, now);
+    }
+
+    /**
+     * @param ip 客户端 IP
+     * @return 该 IP 是否超过拦截阈值，未配置阈值时始终为 false
+     */
+    public boolean isHeavyHitter(String ip) {
+        if (config.isDisabled() || config.getBlockThreshold() <= 0) {
+            return false;
+        }
+        return clients.estimate(ip, System.currentTimeMillis()) > config.getBlockThreshold();
+    }
+
+    /**
+     * @return 超过阈值的 IP 被拒绝后建议的重试秒数，即窗口滑动一格的时间
+     */
+    public long retryAfterSeconds() {
+        return Math.max(1, clients.getSlotMillis() / 1000);
+    }
+
+    public HeavyHittersInfo snapshot() {
+        if (config.isDisabled()) {
+            return new HeavyHittersInfo(config.getWindowSeconds(), List.of(), List.of());
+        }
+        long now = System.currentTimeMillis();
+        return new HeavyHittersInfo(config.getWindowSeconds(), clients.top(now), endpoints.top(now));
+    }
+}
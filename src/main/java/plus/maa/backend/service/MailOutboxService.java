@@ -0,0 +1,199 @@
+package plus.maa.backend.service;
+
+import cn.hutool.extra.mail.MailAccount;
+import cn.hutool.extra.mail.MailUtil;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import plus.maa.backend.common.utils.SmtpTransportPool;
+import plus.maa.backend.config.external.MaaCopilotProperties;
+import plus.maa.backend.config.external.Mail;
+import plus.maa.backend.config.external.MailOutbox;
+import plus.maa.backend.repository.entity.OutboxMail;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.AddressException;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 邮件发件箱 <br>
+ * 邮件先写入 maa_mail_outbox 集合再由后台线程发送，节点重启不会丢失未发送的邮件；
+ * 发送时复用 {@link SmtpTransportPool} 中的连接，失败后按指数退避重试。
+ * 领取邮件通过 findAndModify 推迟其发送时间完成，多个节点可以同时发送而不会重复领取
+ */
+@Slf4j
+@Service
+public class MailOutboxService {
+
+    private final MongoTemplate mongoTemplate;
+    private final MailOutbox config;
+    private final MailAccount mailAccount;
+    private final SmtpTransportPool transportPool;
+    private final ExecutorService senders;
+
+    // 已领取但尚未发送完成的邮件数
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public MailOutboxService(MongoTemplate mongoTemplate, MaaCopilotProperties properties) {
+        this.mongoTemplate = mongoTemplate;
+        this.config = properties.getMailOutbox();
+        Mail mail = properties.getMail();
+        this.mailAccount = new MailAccount()
+                .setHost(mail.getHost())
+                .setPort(mail.getPort())
+                .setFrom(mail.getFrom())
+                .setUser(mail.getUser())
+                .setPass(mail.getPass())
+                .setSslEnable(mail.getSsl())
+                .setStarttlsEnable(mail.getStarttls())
+                .setTimeout(TimeUnit.SECONDS.toMillis(config.getSmtpTimeout()))
+                .setConnectionTimeout(TimeUnit.SECONDS.toMillis(config.getSmtpTimeout()));
+        // getSession 会补全账户中缺省的 host、user 等字段，连接时使用补全后的值
+        Session session = MailUtil.getSession(mailAccount, false);
+        this.transportPool = new SmtpTransportPool(session,
+                mailAccount.getHost(), mailAccount.getPort(), mailAccount.getUser(), mailAccount.getPass(),
+                config.getPoolSize(), TimeUnit.SECONDS.toMillis(config.getIdleTimeout()));
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.senders = Executors.newFixedThreadPool(config.getPoolSize(), runnable -> {
+            Thread thread = new Thread(runnable, "mail-sender-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 写入发件箱，每个收件人单独一封
+     *
+     * @param content 已渲染的正文
+     */
+    public void enqueue(Collection<String> tos, String subject, String content, boolean isHtml, int priority) {
+        for (String to : tos) {
+            mongoTemplate.insert(new OutboxMail()
+                    .setTo(to)
+                    .setSubject(subject)
+                    .setContent(content)
+                    .setHtml(isHtml)
+                    .setPriority(priority));
+        }
+    }
+
+    /**
+     * 领取到期的邮件交给发送线程，上一批未发送完时跳过，避免同一节点积压领取的邮件
+     */
+    @Scheduled(fixedDelayString = "${maa-copilot.mail-outbox.interval:1000}")
+    public void dispatch() {
+        if (inFlight.get() > 0) {
+            return;
+        }
+        for (int i = 0; i < config.getBatchSize(); i++) {
+            OutboxMail mail = claim();
+            if (mail == null) {
+                break;
+            }
+            inFlight.incrementAndGet();
+            try {
+                senders.execute(() -> {
+                    try {
+                        deliver(mail);
+                    } finally {
+                        inFlight.decrementAndGet();
+                    }
+                });
+            } catch (RuntimeException e) {
+                // 线程池已关闭，邮件在领取超时后重新发送
+                inFlight.decrementAndGet();
+                return;
+            }
+        }
+    }
+
+    private OutboxMail claim() {
+        LocalDateTime now = LocalDateTime.now();
+        Query query = Query.query(Criteria.where("status").is(OutboxMail.Status.PENDING)
+                        .and("nextAttemptTime").lte(now))
+                .with(Sort.by("priority", "nextAttemptTime"));
+        Update update = new Update()
+                .set("nextAttemptTime", now.plusSeconds(config.getClaimTimeout()))
+                .inc("attempts", 1);
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true),
+                OutboxMail.class);
+    }
+
+    private void deliver(OutboxMail mail) {
+        try {
+            MimeMessage message = transportPool.createMessage();
+            message.setFrom(new InternetAddress(mailAccount.getFrom()));
+            message.setRecipient(MimeMessage.RecipientType.TO, new InternetAddress(mail.getTo()));
+            message.setSubject(mail.getSubject(), StandardCharsets.UTF_8.name());
+            message.setContent(mail.getContent(),
+                    (mail.isHtml() ? "text/html" : "text/plain") + "; charset=" + StandardCharsets.UTF_8.name());
+            message.setSentDate(new Date());
+            transportPool.send(message);
+        } catch (AddressException e) {
+            // 地址格式错误
+            fail(mail, e, true);
+            return;
+        } catch (MessagingException e) {
+            // 收件地址被拒绝时重试也不会成功
+            fail(mail, e, SmtpTransportPool.isRecipientRejected(e));
+            return;
+        } catch (InterruptedException e) {
+            // 正在关闭，邮件在领取超时后重新发送
+            Thread.currentThread().interrupt();
+            return;
+        } catch (RuntimeException e) {
+            fail(mail, e, false);
+            return;
+        }
+        mongoTemplate.remove(Query.query(Criteria.where("_id").is(mail.getId())), OutboxMail.class);
+    }
+
+    private void fail(OutboxMail mail, Exception e, boolean permanent) {
+        Update update = new Update().set("lastError", StringUtils.abbreviate(String.valueOf(e.getMessage()), 500));
+        if (permanent || mail.getAttempts() >= config.getMaxAttempts()) {
+            log.error("邮件发送失败，不再重试: to={}, subject={}", mail.getTo(), mail.getSubject(), e);
+            update.set("status", OutboxMail.Status.FAILED);
+        } else {
+            long delay = retryDelaySeconds(mail.getAttempts());
+            log.warn("邮件发送失败，{} 秒后重试: to={}, attempts={}, error={}",
+                    delay, mail.getTo(), mail.getAttempts(), e.getMessage());
+            update.set("nextAttemptTime", LocalDateTime.now().plusSeconds(delay));
+        }
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(mail.getId())), update, OutboxMail.class);
+    }
+
+    /**
+     * @param attempts 已尝试的次数，从 1 开始
+     */
+    private long retryDelaySeconds(int attempts) {
+        long delay = (long) config.getRetryDelay() << Math.min(attempts - 1, 30);
+        return Math.min(delay, config.getMaxRetryDelay());
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        senders.shutdown();
+        if (!senders.awaitTermination(config.getSmtpTimeout(), TimeUnit.SECONDS)) {
+            senders.shutdownNow();
+        }
+        transportPool.close();
+    }
+}
@@ -0,0 +1,68 @@
+package plus.maa.backend.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Date;
+
+/**
+ * 一次性数据迁移 <br>
+ * 每个迁移在 maa_migration 集合中以名称记录状态，完成后不再执行；多个节点同时启动时只有一个节点执行。
+ * 执行失败会移除记录，下次启动重试；执行中的节点退出后，超过 STALE_AFTER 的记录可被其他节点重新领取，
+ * 因此迁移本身需要可以重复执行
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MigrationService {
+
+    private static final String COLLECTION = "maa_migration";
+    private static final Duration STALE_AFTER = Duration.ofHours(1);
+
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * 执行尚未完成的迁移，已完成或正由其他节点执行时直接返回
+     */
+    public void runOnce(String name, Runnable migration) {
+        if (!claim(name)) {
+            return;
+        }
+        log.info("开始数据迁移 {}", name);
+        try {
+            migration.run();
+        } catch (RuntimeException e) {
+            log.error("数据迁移 {} 失败，下次启动时重试", name, e);
+            mongoTemplate.remove(Query.query(Criteria.where("_id").is(name).and("status").is("RUNNING")), COLLECTION);
+            return;
+        }
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(name)),
+                new Update().set("status", "DONE").set("finishTime", new Date()), COLLECTION);
+        log.info("数据迁移 {} 完成", name);
+    }
+
+    private boolean claim(String name) {
+        try {
+            mongoTemplate.insert(new Document("_id", name)
+                    .append("status", "RUNNING")
+                    .append("startTime", new Date()), COLLECTION);
+            return true;
+        } catch (DuplicateKeyException e) {
+            // 已完成，或由其他节点执行中；执行节点退出后遗留的记录在超时后重新领取
+            Date stale = new Date(System.currentTimeMillis() - STALE_AFTER.toMillis());
+            Query query = Query.query(Criteria.where("_id").is(name)
+                    .and("status").is("RUNNING")
+                    .and("startTime").lt(stale));
+            return mongoTemplate.updateFirst(query, new Update().set("startTime", new Date()), COLLECTION)
+                    .getModifiedCount() > 0;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package plus.maa.backend.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import plus.maa.backend.config.external.MaaCopilotProperties;
+import plus.maa.backend.config.external.PasswordHashing;
+import plus.maa.backend.controller.response.PasswordHashingStats;
+import plus.maa.backend.controller.response.ServiceOverloadedException;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 密码哈希 <br>
+ * BCrypt 计算量大，统一在固定大小的线程池中执行，队列满时立即拒绝，
+ * 登录请求激增时最多占用线程池大小的 CPU，其他接口的请求线程不受影响
+ */
+@Slf4j
+@Service
+public class PasswordHashingService {
+
+    private final PasswordEncoder passwordEncoder;
+    private final PasswordHashing config;
+    private final ThreadPoolExecutor executor;
+
+    // 以下统计自启动以来累计，查询不会重置，耗时单位为纳秒
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder hashCount = new LongAdder();
+    private final LongAdder hashNanos = new LongAdder();
+    private final LongAccumulator maxHashNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder waitNanos = new LongAdder();
+
+    // 上次输出日志时的累计值，日志只输出这一分钟内的变化，仅由定时任务线程访问
+    private PasswordHashingStats lastLogged = new PasswordHashingStats();
+
+    public PasswordHashingService(PasswordEncoder passwordEncoder, MaaCopilotProperties properties) {
+        this.passwordEncoder = passwordEncoder;
+        this.config = properties.getPasswordHashing();
+        int threads = config.getThreads() > 0 ? config.getThreads()
+                : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(config.getQueueCapacity()),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hash-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public String encode(CharSequence rawPassword) {
+        return execute(() -> passwordEncoder.encode(rawPassword));
+    }
+
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return execute(() -> passwordEncoder.matches(rawPassword, encodedPassword));
+    }
+
+    private <T> T execute(Callable<T> hashing) {
+        long submitted = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                long start = System.nanoTime();
+                waitNanos.add(start - submitted);
+                try {
+                    return hashing.call();
+                } finally {
+                    long elapsed = System.nanoTime() - start;
+                    hashCount.increment();
+                    hashNanos.add(elapsed);
+                    maxHashNanos.accumulate(elapsed);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new ServiceOverloadedException(1);
+        }
+        try {
+            return future.get(config.getTimeout(), TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            timedOut.increment();
+            future.cancel(true);
+            throw new ServiceOverloadedException(1);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("password hashing interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * 获取当前状态与启动以来的累计统计，不影响其他查询和日志输出
+     */
+    public PasswordHashingStats stats() {
+        return new PasswordHashingStats()
+                .setThreads(executor.getCorePoolSize())
+                .setActiveThreads(executor.getActiveCount())
+                .setQueueDepth(executor.getQueue().size())
+                .setQueueCapacity(config.getQueueCapacity())
+                .setCompleted(hashCount.sum())
+                .setRejected(rejected.sum())
+                .setTimedOut(timedOut.sum())
+                .setTotalHashNanos(hashNanos.sum())
+                .setTotalWaitNanos(waitNanos.sum())
+                .setMaxHashNanos(maxHashNanos.get());
+    }
+
+    @Scheduled(fixedDelay = 1, timeUnit = TimeUnit.MINUTES)
+    public void logStats() {
+        PasswordHashingStats current = stats();
+        PasswordHashingStats last = lastLogged;
+        lastLogged = current;
+        long count = current.getCompleted() - last.getCompleted();
+        long rejectedCount = current.getRejected() - last.getRejected();
+        long timedOutCount = current.getTimedOut() - last.getTimedOut();
+        if (count == 0 && rejectedCount == 0 && timedOutCount == 0 && current.getQueueDepth() == 0) {
+            return;
+        }
+        log.info("password hashing in the last minute: count={}, rejected={}, timedOut={}, avgHash={}ms, avgWait={}ms, " +
+                        "active={}, queue={}/{}",
+                count, rejectedCount, timedOutCount,
+                count == 0 ? 0 : (current.getTotalHashNanos() - last.getTotalHashNanos()) / count / 1_000_000,
+                count == 0 ? 0 : (current.getTotalWaitNanos() - last.getTotalWaitNanos()) / count / 1_000_000,
+                current.getActiveThreads(), current.getQueueDepth(), current.getQueueCapacity());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,126 @@
+package plus.maa.backend.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.io.Resource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import plus.maa.backend.common.utils.SensitiveWordMatcher;
+import plus.maa.backend.controller.response.MaaResultException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 敏感词库 <br>
+ * 词库文件变更或管理员手动触发时，在后台线程构建新的自动机后整体替换，
+ * 检测中的请求始终使用替换前完整的旧自动机，不会读到构建了一半的词库，也不会因重建而阻塞 <br>
+ * 手动触发只重新载入当前节点，其他节点在下一次定时检查发现词库文件修改后载入
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SensitiveWordService {
+
+    private final ApplicationContext applicationContext;
+
+    // 标准的 Spring 路径匹配语法，默认为 classpath:sensitive-word.txt
+    @Value("${maa-copilot.sensitive-word.path:classpath:sensitive-word.txt}")
+    private String sensitiveWordPath;
+
+    private volatile SensitiveWordMatcher matcher;
+
+    // 当前词库文件的修改时间，classpath 内的文件无法修改，为 -1
+    private volatile long lastModified = -1;
+
+    /**
+     * 启动时同步载入词库，载入失败则启动失败
+     */
+    @PostConstruct
+    public void init() throws IOException {
+        reload();
+    }
+
+    /**
+     * 检测文本中包含的敏感词
+     *
+     * @param text 文本
+     * @return 命中的敏感词，未命中时返回空列表
+     */
+    public List<String> matchAll(CharSequence text) {
+        return matcher.matchAll(text);
+    }
+
+    /**
+     * 定时检查词库文件是否发生变更，变更后重新载入
+     */
+    @Scheduled(fixedDelayString = "${maa-copilot.sensitive-word.check-interval:60}", timeUnit = TimeUnit.SECONDS)
+    public void checkForUpdate() {
+        Resource resource = applicationContext.getResource(sensitiveWordPath);
+        if (!resource.isFile()) {
+            return;
+        }
+        try {
+            if (resource.lastModified() != lastModified) {
+                log.info("敏感词库文件发生变更，重新载入");
+                reload();
+            }
+        } catch (IOException e) {
+            log.error("敏感词库重新载入失败，继续使用原词库：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 手动重新载入词库
+     *
+     * @return 载入后的词数
+     */
+    public int manualReload() {
+        try {
+            return reload();
+        } catch (IOException e) {
+            log.error("敏感词库重新载入失败，继续使用原词库：{}", e.getMessage());
+            throw new MaaResultException("敏感词库重新载入失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 构建新的自动机并整体替换，同一时间只进行一次构建
+     */
+    private synchronized int reload() throws IOException {
+        // Spring 上下文获取敏感词文件
+        Resource sensitiveWordResource = applicationContext.getResource(sensitiveWordPath);
+        long modified = sensitiveWordResource.isFile() ? sensitiveWordResource.lastModified() : -1;
+        List<String> words = new ArrayList<>();
+
+        // 获取载入用时
+        long start = System.currentTimeMillis();
+
+        // 以行为单位载入敏感词
+        try (BufferedReader bufferedReader = new BufferedReader(
+                new InputStreamReader(sensitiveWordResource.getInputStream(), StandardCharsets.UTF_8))
+        ) {
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                words.add(line);
+            }
+        } catch (IOException e) {
+            log.error("敏感词库载入失败：{}", e.getMessage());
+            throw e;
+        }
+
+        SensitiveWordMatcher newMatcher = SensitiveWordMatcher.build(words);
+        matcher = newMatcher;
+        lastModified = modified;
+        log.info("敏感词库载入完成，共 {} 个词，耗时 {} ms", newMatcher.size(), System.currentTimeMillis() - start);
+        return newMatcher.size();
+    }
+}
@@ -0,0 +1,78 @@
+package plus.maa.backend.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import plus.maa.backend.repository.entity.Sequence;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 多实例共享的自增序列 <br>
+ * 每个实例通过对计数器文档的原子 $inc 一次申请一段号段，号段内的值在本地分配，
+ * 不同实例之间不会拿到重复的值；实例重启时未用完的号段会被丢弃，序列允许出现空洞
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SequenceService {
+
+    private final MongoTemplate mongoTemplate;
+
+    private final Map<String, Block> blocks = new ConcurrentHashMap<>();
+
+    /**
+     * 保证序列已分配的最大值不小于 value，用于从已有数据初始化计数器 <br>
+     * 多个实例同时执行也只会取最大值
+     *
+     * @param name  序列名
+     * @param value 已被使用的最大值
+     */
+    public void ensureAtLeast(String name, long value) {
+        mongoTemplate.upsert(Query.query(Criteria.where("_id").is(name)),
+                new Update().max("value", value), Sequence.class);
+    }
+
+    /**
+     * 获取序列的下一个值，本地号段用完时向数据库申请新的号段
+     *
+     * @param name      序列名
+     * @param blockSize 每次申请的号段大小
+     * @return 下一个值
+     */
+    public long next(String name, int blockSize) {
+        Block block = blocks.computeIfAbsent(name, k -> new Block());
+        synchronized (block) {
+            if (block.next > block.end) {
+                long end = allocate(name, blockSize);
+                block.next = end - blockSize + 1;
+                block.end = end;
+                log.info("序列 {} 申请号段: [{}, {}]", name, block.next, block.end);
+            }
+            return block.next++;
+        }
+    }
+
+    private long allocate(String name, int blockSize) {
+        Sequence sequence = mongoTemplate.findAndModify(Query.query(Criteria.where("_id").is(name)),
+                new Update().inc("value", blockSize),
+                FindAndModifyOptions.options().returnNew(true).upsert(true),
+                Sequence.class);
+        return Objects.requireNonNull(sequence).getValue();
+    }
+
+    /**
+     * 本地号段，[next, end] 为尚未分配的值
+     */
+    private static class Block {
+        private long next = 1;
+        private long end = 0;
+    }
+}
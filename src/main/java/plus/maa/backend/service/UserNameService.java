@@ -0,0 +1,77 @@
+package plus.maa.backend.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import plus.maa.backend.repository.entity.MaaUser;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 用户 id 到用户名的缓存 <br>
+ * 作业与评论列表只需要展示用户名，未命中时只查询用户名字段并批量载入，不读取密码等其他字段；
+ * 本节点修改用户名时立即失效，其他节点的缓存在过期后更新
+ */
+@Service
+@RequiredArgsConstructor
+public class UserNameService {
+
+    public static final String UNKNOWN_USER_NAME = "未知用户:(";
+
+    private final MongoTemplate mongoTemplate;
+
+    private final Cache<String, String> userNames = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(Duration.ofMinutes(10))
+            .build();
+
+    /**
+     * 批量获取用户名
+     *
+     * @param userIds 用户 id
+     * @return 用户 id -> 用户名，不存在的用户不包含在结果中
+     */
+    public Map<String, String> getUserNames(Collection<String> userIds) {
+        Set<String> ids = userIds.stream().filter(Objects::nonNull).collect(Collectors.toSet());
+        if (ids.isEmpty()) {
+            return Map.of();
+        }
+        return userNames.getAll(ids, this::load);
+    }
+
+    /**
+     * 获取单个用户的用户名，用户不存在时返回 {@link #UNKNOWN_USER_NAME}
+     */
+    public String getUserName(String userId) {
+        return getUserNames(Set.of(userId)).getOrDefault(userId, UNKNOWN_USER_NAME);
+    }
+
+    /**
+     * 用户名变更后调用
+     */
+    public void invalidate(String userId) {
+        userNames.invalidate(userId);
+    }
+
+    private Map<String, String> load(Set<? extends String> userIds) {
+        Query query = Query.query(Criteria.where("_id").in(userIds));
+        query.fields().include("userName");
+        Map<String, String> loaded = new HashMap<>();
+        for (MaaUser user : mongoTemplate.find(query, MaaUser.class)) {
+            if (user.getUserName() != null) {
+                loaded.put(user.getUserId(), user.getUserName());
+            }
+        }
+        return loaded;
+    }
+}
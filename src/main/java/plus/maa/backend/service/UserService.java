@@ -6,10 +6,14 @@ import lombok.extern.slf4j.Slf4j;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.beans.BeanUtils;
 import org.springframework.dao.DuplicateKeyException;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 import plus.maa.backend.common.MaaStatusCode;
 import plus.maa.backend.common.utils.converter.MaaUserConverter;
+import plus.maa.backend.config.external.MaaCopilotProperties;
 import plus.maa.backend.controller.request.user.*;
 import plus.maa.backend.controller.response.MaaResultException;
 import plus.maa.backend.controller.response.user.MaaLoginRsp;
@@ -21,7 +25,6 @@ import plus.maa.backend.service.jwt.JwtExpiredException;
 import plus.maa.backend.service.jwt.JwtInvalidException;
 import plus.maa.backend.service.jwt.JwtService;
 
-import java.util.ArrayList;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.UUID;
@@ -40,10 +43,14 @@ public class UserService {
 
     private final UserRepository userRepository;
     private final EmailService emailService;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHashingService passwordHashingService;
     private final UserDetailServiceImpl userDetailService;
     private final JwtService jwtService;
     private final MaaUserConverter maaUserConverter;
+    private final MongoTemplate mongoTemplate;
+    private final UserNameService userNameService;
+    private final RedisCache redisCache;
+    private final MaaCopilotProperties properties;
 
     /**
      * 登录方法
@@ -53,7 +60,7 @@ public class UserService {
      */
     public MaaLoginRsp login(LoginDTO loginDTO) {
         var user = userRepository.findByEmail(loginDTO.getEmail());
-        if (user == null || !passwordEncoder.matches(loginDTO.getPassword(), user.getPassword())) {
+        if (user == null || !passwordHashingService.matches(loginDTO.getPassword(), user.getPassword())) {
             throw new MaaResultException(401, "用户不存在或者密码错误");
         }
         // 未激活的用户
@@ -62,10 +69,8 @@ public class UserService {
         }
 
         var jwtId = UUID.randomUUID().toString();
-        var jwtIds = user.getRefreshJwtIds();
-        jwtIds.add(jwtId);
-        while (jwtIds.size() > LOGIN_LIMIT) jwtIds.remove(0);
-        userRepository.save(user);
+        // 登记新的 refresh token id，只保留最近 LOGIN_LIMIT 个
+        redisCache.addRefreshJwtId(user.getUserId(), jwtId, LOGIN_LIMIT, refreshExpire());
 
         var authorities = userDetailService.collectAuthoritiesFor(user);
         var authToken = jwtService.issueAuthToken(user.getUserId(), null, authorities);
@@ -89,13 +94,11 @@ public class UserService {
      * @param rawPassword 新密码
      */
     public void modifyPassword(String userId, String rawPassword) {
-        var userResult = userRepository.findById(userId);
-        if (userResult.isEmpty()) return;
-        var maaUser = userResult.get();
         // 修改密码的逻辑，应当使用与 authentication provider 一致的编码器
-        maaUser.setPassword(passwordEncoder.encode(rawPassword));
-        maaUser.setRefreshJwtIds(new ArrayList<>());
-        userRepository.save(maaUser);
+        Update update = new Update().set("password", passwordHashingService.encode(rawPassword));
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(userId)), update, MaaUser.class);
+        // 注销全部 refresh token
+        redisCache.removeRefreshJwtIds(userId);
     }
 
     /**
@@ -105,7 +108,7 @@ public class UserService {
      * @return 返回注册成功的用户摘要（脱敏）
      */
     public MaaUserInfo register(RegisterDTO registerDTO) {
-        String encode = passwordEncoder.encode(registerDTO.getPassword());
+        String encode = passwordHashingService.encode(registerDTO.getPassword());
 
         // 校验验证码
         emailService.verifyVCode(registerDTO.getEmail(), registerDTO.getRegistrationToken());
@@ -134,6 +137,7 @@ public class UserService {
         userRepository.findById(userId).ifPresent((maaUser) -> {
             maaUser.updateAttribute(updateDTO);
             userRepository.save(maaUser);
+            userNameService.invalidate(userId);
         });
     }
 
@@ -147,16 +151,13 @@ public class UserService {
             var old = jwtService.verifyAndParseRefreshToken(token);
 
             var userId = old.getSubject();
-            var user = userRepository.findById(userId).orElseThrow();
-
-            var refreshJwtIds = user.getRefreshJwtIds();
-            int idIndex = refreshJwtIds.indexOf(old.getJwtId());
-            if (idIndex < 0) throw new MaaResultException(401, "invalid token");
 
+            // 原子地将旧的 refresh token id 替换为新的，旧 token 已被使用或注销时替换失败
             var jwtId = UUID.randomUUID().toString();
-            refreshJwtIds.set(idIndex, jwtId);
-
-            userRepository.save(user);
+            if (!redisCache.rotateRefreshJwtId(userId, old.getJwtId(), jwtId, refreshExpire())) {
+                throw new MaaResultException(401, "invalid token");
+            }
+            var user = userRepository.findById(userId).orElseThrow();
 
             var refreshToken = jwtService.newRefreshToken(old, jwtId);
 
@@ -213,4 +214,8 @@ public class UserService {
         emailService.sendVCode(regDTO.getEmail());
     }
 
+
+    private long refreshExpire() {
+        return properties.getJwt().getRefreshExpire();
+    }
 }
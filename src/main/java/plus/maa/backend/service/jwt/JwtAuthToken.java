@@ -1,6 +1,7 @@
 package plus.maa.backend.service.jwt;
 
 import cn.hutool.jwt.JWT;
+import lombok.AccessLevel;
 import lombok.Getter;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
@@ -9,6 +10,7 @@ import org.springframework.util.StringUtils;
 
 import java.time.LocalDateTime;
 import java.util.Collection;
+import java.util.List;
 
 /**
  * 基于 {@link JWT} 的 AuthToken. 本类实现了 {@link Authentication}， 可直接用于 Spring Security
@@ -22,6 +24,9 @@ public final class JwtAuthToken extends JwtToken implements Authentication {
     public static final String TYPE = "auth";
     private static final String CLAIM_AUTHORITIES = "Authorities";
     private boolean authenticated = false;
+    // 解析后的权限，避免每次访问都重新拆分字符串
+    @Getter(AccessLevel.NONE)
+    private List<GrantedAuthority> authorities;
 
     /**
      * 从 jwt 构建 token
@@ -32,6 +37,17 @@ public final class JwtAuthToken extends JwtToken implements Authentication {
      */
     public JwtAuthToken(String jwt, byte[] key) throws JwtInvalidException {
         super(jwt, TYPE, key);
+        this.authorities = parseAuthorities(getJwt().getPayloads().getStr(CLAIM_AUTHORITIES));
+    }
+
+    /**
+     * 基于已验证的 token 创建新的认证对象，jwt 各自独立，解析后的不可变权限列表共享
+     *
+     * @param parsed 已验证的 token
+     */
+    public JwtAuthToken(JwtAuthToken parsed) {
+        super(parsed);
+        this.authorities = parsed.authorities;
     }
 
     public JwtAuthToken(
@@ -50,16 +66,20 @@ public final class JwtAuthToken extends JwtToken implements Authentication {
 
     @Override
     public Collection<? extends GrantedAuthority> getAuthorities() {
-        var authorityStrings = getJwt().getPayloads().getStr(CLAIM_AUTHORITIES);
-        return StringUtils.commaDelimitedListToSet(authorityStrings).stream()
-                .map(SimpleGrantedAuthority::new)
-                .toList();
+        return authorities;
     }
 
     public void setAuthorities(Collection<? extends GrantedAuthority> authorities) {
         var authorityStrings = authorities.stream().map(GrantedAuthority::getAuthority).toList();
         var encodedAuthorities = StringUtils.collectionToCommaDelimitedString(authorityStrings);
         getJwt().setPayload(CLAIM_AUTHORITIES, encodedAuthorities);
+        this.authorities = parseAuthorities(encodedAuthorities);
+    }
+
+    private static List<GrantedAuthority> parseAuthorities(String authorityStrings) {
+        return StringUtils.commaDelimitedListToSet(authorityStrings).stream()
+                .<GrantedAuthority>map(SimpleGrantedAuthority::new)
+                .toList();
     }
 
     /**
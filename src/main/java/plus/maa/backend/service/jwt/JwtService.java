@@ -1,5 +1,8 @@
 package plus.maa.backend.service.jwt;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.springframework.security.core.GrantedAuthority;
@@ -7,8 +10,13 @@ import org.springframework.stereotype.Service;
 import plus.maa.backend.config.external.Jwt;
 import plus.maa.backend.config.external.MaaCopilotProperties;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
+import java.util.Base64;
 import java.util.Collection;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 基于 Jwt 的 token 服务。 可直接用于 stateless 情境下的签发和认证， 或结合数据库进行状态管理。
@@ -16,9 +24,37 @@ import java.util.Collection;
  */
 @Service
 public class JwtService {
+    // 已验证 AuthToken 的缓存上限
+    private static final int AUTH_TOKEN_CACHE_SIZE = 10_000;
+
     private final Jwt jwtProperties;
     private final byte[] key;
 
+    /**
+     * 已通过签名验证的 AuthToken，以 jwt 字符串的 SHA-256 摘要为键，在 token 过期时同时失效。
+     * 同一 token 的后续请求跳过签名验证和 payload 解析
+     */
+    private final Cache<String, JwtAuthToken> authTokenCache = Caffeine.newBuilder()
+            .maximumSize(AUTH_TOKEN_CACHE_SIZE)
+            .expireAfter(new Expiry<String, JwtAuthToken>() {
+                @Override
+                public long expireAfterCreate(String digest, JwtAuthToken token, long currentTime) {
+                    long ttl = token.getExpiresAtMillis() - System.currentTimeMillis();
+                    return TimeUnit.MILLISECONDS.toNanos(Math.max(ttl, 0));
+                }
+
+                @Override
+                public long expireAfterUpdate(String digest, JwtAuthToken token, long currentTime, long currentDuration) {
+                    return expireAfterCreate(digest, token, currentTime);
+                }
+
+                @Override
+                public long expireAfterRead(String digest, JwtAuthToken token, long currentTime, long currentDuration) {
+                    return currentDuration;
+                }
+            })
+            .build();
+
     public JwtService(MaaCopilotProperties properties) {
         jwtProperties = properties.getJwt();
         key = jwtProperties.getSecret().getBytes();
@@ -48,8 +84,19 @@ public class JwtService {
      */
     @NotNull
     public JwtAuthToken verifyAndParseAuthToken(String authToken) throws JwtInvalidException, JwtExpiredException {
-        var token = new JwtAuthToken(authToken, key);
-        token.validateDate(LocalDateTime.now());
+        long now = System.currentTimeMillis();
+        var digest = digest(authToken);
+        var parsed = authTokenCache.getIfPresent(digest);
+        if (parsed == null) {
+            parsed = new JwtAuthToken(authToken, key);
+            // 未生效或已过期的 token 不进入缓存
+            parsed.validateDate(now);
+            authTokenCache.put(digest, parsed);
+        } else {
+            parsed.validateDate(now);
+        }
+        // 缓存中的 token 由多个请求共享，每次返回独立的认证对象
+        var token = new JwtAuthToken(parsed);
         token.setAuthenticated(true);
         return token;
     }
@@ -92,8 +139,18 @@ public class JwtService {
     @NotNull
     public JwtRefreshToken verifyAndParseRefreshToken(String refreshToken) throws JwtInvalidException, JwtExpiredException {
         var token = new JwtRefreshToken(refreshToken, key);
-        token.validateDate(LocalDateTime.now());
+        token.validateDate(System.currentTimeMillis());
         return token;
     }
 
+    private static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            // 所有 Java 平台都必须支持 SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
 }
@@ -9,7 +9,7 @@ import lombok.Getter;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
-import java.util.TimeZone;
+import java.time.ZoneId;
 
 /**
  * 对 {@link JWT} 的包装增强，某些 payload 被标记为 MUST
@@ -21,19 +21,30 @@ public class JwtToken {
 
     private final JSONObject payload;
 
+    // 时间相关的 payload 在构造时解析一次，校验有效期时直接比较毫秒数
+    private final long issuedAtMillis;
+    private final long expiresAtMillis;
+    private final long notBeforeMillis;
+
     public JwtToken(String token, String requiredType, byte[] key) throws JwtInvalidException {
         if (!JWTUtil.verify(token, key)) throw new JwtInvalidException();
         this.jwt = JWTUtil.parseToken(token);
         this.jwt.setKey(key);
         this.payload = jwt.getPayloads();
 
+        Long iat = payload.getLong(RegisteredPayload.ISSUED_AT);
+        Long exp = payload.getLong(RegisteredPayload.EXPIRES_AT);
+        Long nbf = payload.getLong(RegisteredPayload.NOT_BEFORE);
         // jwtId is nullable
         if (null == getSubject()
-                || null == getIssuedAt()
-                || null == getExpiresAt()
-                || null == getNotBefore()
+                || null == iat
+                || null == exp
+                || null == nbf
                 || !requiredType.equals(getType())
         ) throw new JwtInvalidException();
+        this.issuedAtMillis = iat;
+        this.expiresAtMillis = exp;
+        this.notBeforeMillis = nbf;
     }
 
     public JwtToken(
@@ -45,17 +56,36 @@ public class JwtToken {
             String typ,
             byte[] key
     ) {
+        var offset = OffsetDateTime.now().getOffset();
+        issuedAtMillis = iat.toInstant(offset).toEpochMilli();
+        expiresAtMillis = exp.toInstant(offset).toEpochMilli();
+        notBeforeMillis = nbf.toInstant(offset).toEpochMilli();
         jwt = JWT.create();
         jwt.setPayload(RegisteredPayload.SUBJECT, sub);
         jwt.setPayload(RegisteredPayload.JWT_ID, jti);
-        jwt.setPayload(RegisteredPayload.ISSUED_AT, iat.toInstant(OffsetDateTime.now().getOffset()).toEpochMilli());
-        jwt.setPayload(RegisteredPayload.EXPIRES_AT, exp.toInstant(OffsetDateTime.now().getOffset()).toEpochMilli());
-        jwt.setPayload(RegisteredPayload.NOT_BEFORE, nbf.toInstant(OffsetDateTime.now().getOffset()).toEpochMilli());
+        jwt.setPayload(RegisteredPayload.ISSUED_AT, issuedAtMillis);
+        jwt.setPayload(RegisteredPayload.EXPIRES_AT, expiresAtMillis);
+        jwt.setPayload(RegisteredPayload.NOT_BEFORE, notBeforeMillis);
         jwt.setPayload(CLAIM_TYPE, typ);
         jwt.setKey(key);
         payload = jwt.getPayloads();
     }
 
+    /**
+     * 复制已解析的 token，跳过签名验证和时间解析；jwt 的 header 与 payload 各自复制一份，
+     * 修改副本不会影响原 token
+     */
+    protected JwtToken(JwtToken parsed) {
+        this.jwt = JWT.create()
+                .addHeaders(parsed.jwt.getHeaders())
+                .addPayloads(parsed.payload)
+                .setSigner(parsed.jwt.getSigner());
+        this.payload = jwt.getPayloads();
+        this.issuedAtMillis = parsed.issuedAtMillis;
+        this.expiresAtMillis = parsed.expiresAtMillis;
+        this.notBeforeMillis = parsed.notBeforeMillis;
+    }
+
 
     public String getSubject() {
         return payload.getStr(RegisteredPayload.SUBJECT);
@@ -68,20 +98,17 @@ public class JwtToken {
 
 
     public LocalDateTime getIssuedAt() {
-        return LocalDateTime.ofInstant(Instant.ofEpochMilli(payload.getLong(RegisteredPayload.ISSUED_AT)),
-                TimeZone.getDefault().toZoneId());
+        return toLocalDateTime(issuedAtMillis);
     }
 
 
     public LocalDateTime getExpiresAt() {
-        return LocalDateTime.ofInstant(Instant.ofEpochMilli(payload.getLong(RegisteredPayload.EXPIRES_AT)),
-                TimeZone.getDefault().toZoneId());
+        return toLocalDateTime(expiresAtMillis);
     }
 
 
     public LocalDateTime getNotBefore() {
-        return LocalDateTime.ofInstant(Instant.ofEpochMilli(payload.getLong(RegisteredPayload.NOT_BEFORE)),
-                TimeZone.getDefault().toZoneId());
+        return toLocalDateTime(notBeforeMillis);
     }
 
 
@@ -102,9 +129,30 @@ public class JwtToken {
         return jwt.sign();
     }
 
+    /**
+     * @return 过期时间的毫秒时间戳
+     */
+    public long getExpiresAtMillis() {
+        return expiresAtMillis;
+    }
+
     public void validateDate(LocalDateTime moment) throws JwtExpiredException {
-        if (!moment.isBefore(getExpiresAt())) throw new JwtExpiredException("expired");
-        if (moment.isBefore(getNotBefore())) throw new JwtExpiredException("haven't take effect");
+        validateDate(moment.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+    }
+
+    /**
+     * 校验有效期
+     *
+     * @param epochMillis 校验时刻的毫秒时间戳
+     * @throws JwtExpiredException jwt未生效或者已过期
+     */
+    public void validateDate(long epochMillis) throws JwtExpiredException {
+        if (epochMillis >= expiresAtMillis) throw new JwtExpiredException("expired");
+        if (epochMillis < notBeforeMillis) throw new JwtExpiredException("haven't take effect");
+    }
+
+    private static LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
     }
 
 }
@@ -0,0 +1,11 @@
+package plus.maa.backend.service.model;
+
+/**
+ * 按关卡打包好的作业压缩包
+ *
+ * @param stageId 关卡 stageId
+ * @param content zip 内容
+ * @param etag    基于内容计算的 ETag
+ */
+public record CopilotExportArchive(String stageId, byte[] content, String etag) {
+}
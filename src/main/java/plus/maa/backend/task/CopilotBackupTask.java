@@ -1,32 +1,54 @@
 package plus.maa.backend.task;
 
+import com.google.common.collect.Iterators;
 import jakarta.annotation.PostConstruct;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.eclipse.jgit.api.AddCommand;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.Status;
+import org.eclipse.jgit.api.StatusCommand;
 import org.eclipse.jgit.api.TransportConfigCallback;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectInserter;
 import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.transport.SshTransport;
 import org.eclipse.jgit.transport.sshd.SshdSessionFactoryBuilder;
 import org.eclipse.jgit.util.FS;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import plus.maa.backend.config.external.CopilotBackup;
 import plus.maa.backend.config.external.MaaCopilotProperties;
 import plus.maa.backend.controller.response.copilot.ArkLevelInfo;
 import plus.maa.backend.repository.CopilotRepository;
+import plus.maa.backend.repository.RedisCache;
 import plus.maa.backend.repository.entity.Copilot;
 import plus.maa.backend.service.ArkLevelService;
+import plus.maa.backend.service.CopilotContentService;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
@@ -43,6 +65,17 @@ public class CopilotBackupTask {
 
     private final ArkLevelService levelService;
 
+    private final CopilotContentService contentService;
+
+    private final RedisCache redisCache;
+
+    private final MongoTemplate mongoTemplate;
+
+    // 每批处理的作业数量，同时限制了单批驻留内存的作业数
+    private static final int BATCH_SIZE = 500;
+    // 写文件的并行度
+    private static final int WRITE_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+
     private Git git;
     private static final File DEFAULT_SSH_DIR = new File(FS.DETECTED.userHome(), "/.ssh");
 
@@ -91,7 +124,8 @@ public class CopilotBackupTask {
     }
 
     /**
-     * copilot数据同步定时任务，每天执行一次
+     * copilot数据同步定时任务，每天执行一次 <br>
+     * 基于水位线增量备份，只处理上次备份之后上传、更新或删除的作业
      */
     @Scheduled(cron = "${maa-copilot.task-cron.copilot-update:-}")
     public void backupCopilots() {
@@ -104,81 +138,207 @@ public class CopilotBackupTask {
             log.error("git pull execute failed, msg: {}", e.getMessage(), e);
         }
 
+        // 在查询之前记录时间点，备份期间产生的变更留给下一次处理
+        LocalDateTime backupTime = LocalDateTime.now();
+        LocalDateTime watermark = redisCache.getCacheBackupWatermark();
+
         File baseDirectory = git.getRepository().getWorkTree();
-        List<Copilot> copilots = copilotRepository.findAll();
-        copilots.forEach(copilot -> {
-            ArkLevelInfo level = levelService.findByLevelIdFuzzy(copilot.getStageName());
-            if (Objects.isNull(level)) {
-                return;
-            }
-            // 暂时使用 copilotId 作为文件名
-            File filePath = new File(String.join(File.separator, baseDirectory.getPath(), level.getCatOne(),
-                    level.getCatTwo(), level.getCatThree(), copilot.getCopilotId() + ".json"));
-            String content = copilot.getContent();
-            if (Objects.isNull(content)) {
-                return;
-            }
-            if (copilot.isDelete()) {
-                // 删除文件
-                deleteCopilot(filePath);
-            } else {
-                // 创建或者修改文件
-                upsertCopilot(filePath, content);
+        DirCache index;
+        try {
+            // git 索引中记录了已备份文件的哈希，用于跳过内容未变化的文件
+            index = git.getRepository().readDirCache();
+        } catch (IOException e) {
+            log.error("read git index failed, msg: {}", e.getMessage(), e);
+            return;
+        }
+        BackupStats stats = new BackupStats();
+        ExecutorService executor = Executors.newFixedThreadPool(WRITE_THREADS);
+        try (Stream<Copilot> copilots = Objects.isNull(watermark) ?
+                copilotRepository.streamAllBy() :
+                copilotRepository.streamByUploadTimeAfterOrDeleteTimeAfter(watermark, watermark)) {
+            Iterators.partition(copilots.iterator(), BATCH_SIZE)
+                    .forEachRemaining(batch -> backupBatch(batch, baseDirectory, index, stats, executor));
+            if (Objects.isNull(watermark)) {
+                // 归档的作业已不在主集合中，全量备份时从归档集合读取，删除其备份文件
+                try (Stream<Copilot> archived = streamArchivedCopilots()) {
+                    Iterators.partition(archived.iterator(), BATCH_SIZE)
+                            .forEachRemaining(batch -> backupBatch(batch, baseDirectory, index, stats, executor));
+                }
             }
-        });
+        } finally {
+            executor.shutdown();
+        }
+        log.info("copilot backup since {}, written: {}, skipped: {}, deleted: {}, failed: {}", watermark,
+                stats.getWritten().get(), stats.getSkipped().get(), stats.getDeleted().get(), stats.getFailed().get());
 
-        doCommitAndPush();
+        if (!doCommitAndPush(stats.getUpsertPaths(), stats.getDeletePaths())) {
+            return;
+        }
+        if (stats.getFailed().get() > 0) {
+            // 写入失败的作业在水位线之后没有新的变更，推进水位线会导致其再也不被备份，下次从原水位线重试
+            log.warn("{} copilots failed to back up, keep the backup watermark at {}", stats.getFailed().get(), watermark);
+            return;
+        }
+        redisCache.setCacheBackupWatermark(backupTime);
     }
 
-    private void upsertCopilot(File file, String content) {
+    /**
+     * 归档集合中的作业都已删除，只读取定位备份文件所需的字段
+     */
+    private Stream<Copilot> streamArchivedCopilots() {
+        Query query = new Query();
+        query.fields().include("copilotId", "stageName", "delete");
+        String collection = mongoTemplate.getCollectionName(Copilot.class) + SoftDeleteArchiveTask.ARCHIVE_SUFFIX;
+        return mongoTemplate.stream(query, Copilot.class, collection)
+                .map(copilot -> copilot.setDelete(true));
+    }
+
+    /**
+     * 处理一批作业，批内一次性解析关卡信息，文件由线程池并行写入
+     */
+    private void backupBatch(List<Copilot> batch, File baseDirectory, DirCache index,
+                             BackupStats stats, ExecutorService executor) {
+        Map<String, ArkLevelInfo> levels = levelService.findByLevelIdsFuzzy(batch.stream()
+                .map(Copilot::getStageName)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet()));
+        // 已删除的作业只需要删除文件，不必读取原始数据
+        contentService.fillContent(batch.stream().filter(copilot -> !copilot.isDelete()).toList());
+        CompletableFuture<?>[] futures = batch.stream()
+                .map(copilot -> CompletableFuture.runAsync(() -> {
+                    ArkLevelInfo level = levels.get(copilot.getStageName());
+                    String content = copilot.getContent();
+                    if (Objects.isNull(level) || (!copilot.isDelete() && Objects.isNull(content))) {
+                        return;
+                    }
+                    // 暂时使用 copilotId 作为文件名
+                    File file = new File(String.join(File.separator, baseDirectory.getPath(), level.getCatOne(),
+                            level.getCatTwo(), level.getCatThree(), copilot.getCopilotId() + ".json"));
+                    String path = toRepoPath(baseDirectory, file);
+                    if (copilot.isDelete()) {
+                        // 删除文件
+                        deleteCopilot(file, path, stats);
+                    } else {
+                        // 创建或者修改文件
+                        upsertCopilot(file, path, content, index, stats);
+                    }
+                }, executor))
+                .toArray(CompletableFuture[]::new);
+        // 等待本批写入完成后再读取下一批，游标读取不会跑在写入前面太远
+        CompletableFuture.allOf(futures).join();
+    }
+
+    /**
+     * 转换为 git 使用的相对路径，分隔符统一为 /
+     */
+    private String toRepoPath(File baseDirectory, File file) {
+        return baseDirectory.toPath().relativize(file.toPath()).toString().replace(File.separatorChar, '/');
+    }
+
+    private void upsertCopilot(File file, String path, String content, DirCache index, BackupStats stats) {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        // 文件仍存在且内容哈希与 git 索引中的一致，则无需重写
+        DirCacheEntry entry = index.getEntry(path);
+        if (entry != null && entry.getLength() == bytes.length && file.length() == bytes.length
+                && entry.getObjectId().equals(new ObjectInserter.Formatter().idFor(Constants.OBJ_BLOB, bytes))) {
+            stats.getSkipped().incrementAndGet();
+            return;
+        }
         if (!file.exists()) {
             if (!file.getParentFile().mkdirs()) {
                 log.warn("folder may exists, mkdir failed");
             }
         }
         try {
-            Files.writeString(file.toPath(), content);
+            Files.write(file.toPath(), bytes);
+            stats.getUpsertPaths().add(path);
+            stats.getWritten().incrementAndGet();
         } catch (IOException e) {
+            stats.getFailed().incrementAndGet();
             log.error("write file failed, path: {}, message: {}", file.getPath(), e.getMessage(), e);
         }
     }
 
-    private void deleteCopilot(File file) {
+    private void deleteCopilot(File file, String path, BackupStats stats) {
         if (file.exists()) {
             if (file.delete()) {
                 log.info("delete copilot file: {}", file.getPath());
+                stats.getDeletePaths().add(path);
+                stats.getDeleted().incrementAndGet();
             } else {
+                stats.getFailed().incrementAndGet();
                 log.error("delete copilot failed, file: {}", file.getPath());
             }
         } else {
+            stats.getSkipped().incrementAndGet();
             log.info("file does not exists, no need to delete");
         }
     }
 
-    private void doCommitAndPush() {
+    /**
+     * 只暂存本次变更过的路径并提交推送
+     *
+     * @param upsertPaths 新增或修改的文件
+     * @param deletePaths 删除的文件
+     * @return 是否成功完成本次备份（包括无变更的情况）
+     */
+    private boolean doCommitAndPush(Set<String> upsertPaths, Set<String> deletePaths) {
+        if (upsertPaths.isEmpty() && deletePaths.isEmpty()) {
+            log.info("copilot backup with no new added or changes");
+            return true;
+        }
         try {
-            Status status = git.status().call();
-            if (status.getAdded().isEmpty() &&
-                    status.getChanged().isEmpty() &&
-                    status.getRemoved().isEmpty() &&
-                    status.getUntracked().isEmpty() &&
-                    status.getModified().isEmpty() &&
-                    status.getAdded().isEmpty()) {
+            // 只检查本次变更过的路径，避免扫描整个工作区
+            StatusCommand statusCommand = git.status();
+            upsertPaths.forEach(statusCommand::addPath);
+            deletePaths.forEach(statusCommand::addPath);
+            Status status = statusCommand.call();
+            if (!status.hasUncommittedChanges() && status.getUntracked().isEmpty()) {
                 log.info("copilot backup with no new added or changes");
-                return;
+                return true;
+            }
+            if (!upsertPaths.isEmpty()) {
+                AddCommand add = git.add();
+                upsertPaths.forEach(add::addFilepattern);
+                add.call();
+            }
+            if (!deletePaths.isEmpty()) {
+                // update 模式下会暂存已被删除的文件
+                AddCommand remove = git.add().setUpdate(true);
+                deletePaths.forEach(remove::addFilepattern);
+                remove.call();
             }
-            git.add().addFilepattern(".").call();
             CopilotBackup backup = config.getBackup();
             PersonIdent committer = new PersonIdent(backup.getUsername(), backup.getEmail());
             git.commit().setCommitter(committer)
                     .setMessage(LocalDate.now().toString())
                     .call();
+        } catch (GitAPIException e) {
+            log.error("git committing failed, msg: {}", e.getMessage(), e);
+            return false;
+        }
+        try {
             git.push()
                     .setTransportConfigCallback(sshCallback)
                     .call();
         } catch (GitAPIException e) {
-            log.error("git committing failed, msg: {}", e.getMessage(), e);
+            // 已经提交到本地仓库，下次推送时会一并推送
+            log.error("git pushing failed, msg: {}", e.getMessage(), e);
         }
+        return true;
+    }
+
+    /**
+     * 单次备份的统计信息
+     */
+    @Getter
+    private static class BackupStats {
+        private final Set<String> upsertPaths = ConcurrentHashMap.newKeySet();
+        private final Set<String> deletePaths = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger written = new AtomicInteger(0);
+        private final AtomicInteger skipped = new AtomicInteger(0);
+        private final AtomicInteger deleted = new AtomicInteger(0);
+        private final AtomicInteger failed = new AtomicInteger(0);
     }
 
 }
@@ -4,7 +4,9 @@ import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.aggregation.Aggregation;
 import org.springframework.data.mongodb.core.query.Criteria;
@@ -46,7 +48,8 @@ public class CopilotScoreRefreshTask {
     @Scheduled(cron = "0 0 3 * * ?")
     public void refreshHotScores() {
         // 分页获取所有未删除的作业
-        Pageable pageable = Pageable.ofSize(1000);
+        // 按ID排序保证分页稳定，同时可以使用 idx_copilot_id 索引
+        Pageable pageable = PageRequest.of(0, 1000, Sort.by("copilotId"));
         Page<Copilot> copilots = copilotRepository.findAllByDeleteIsFalse(pageable);
 
         // 循环读取直到没有未删除的作业为止
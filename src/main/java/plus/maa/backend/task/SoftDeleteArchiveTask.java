@@ -0,0 +1,202 @@
+package plus.maa.backend.task;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import plus.maa.backend.config.external.Archive;
+import plus.maa.backend.config.external.MaaCopilotProperties;
+import plus.maa.backend.repository.RedisCache;
+import plus.maa.backend.repository.entity.CommentsArea;
+import plus.maa.backend.repository.entity.Copilot;
+import plus.maa.backend.repository.entity.CopilotContent;
+
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * 软删除数据归档任务 <br>
+ * 将删除时间超过保留期的作业和评论分批移入对应的 *_archive 集合，主集合与其索引只保留有效数据 <br>
+ * 开启备份时，只归档删除时间早于备份水位线的作业，保证删除操作已经同步到备份仓库；
+ * 水位线丢失后的全量备份会读取归档集合，删除已归档作业的备份文件 <br>
+ * 已删除的回复在主评论未删除时仍以占位的形式展示，被未删除的评论引用的评论也保留在主集合中，
+ * 待主评论和引用它的回复都删除后再归档
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SoftDeleteArchiveTask {
+
+    // 备份任务在全量备份时同样读取归档集合
+    static final String ARCHIVE_SUFFIX = "_archive";
+
+    private final MaaCopilotProperties config;
+    private final MongoTemplate mongoTemplate;
+    private final RedisCache redisCache;
+
+    @Scheduled(cron = "${maa-copilot.task-cron.soft-delete-archive:-}")
+    public void archive() {
+        Archive archive = config.getArchive();
+        if (archive.isDisabled()) {
+            return;
+        }
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(archive.getRetentionDays());
+
+        LocalDateTime copilotCutoff = cutoff;
+        if (config.getBackup() != null && !config.getBackup().isDisabled()) {
+            LocalDateTime watermark = redisCache.getCacheBackupWatermark();
+            if (Objects.isNull(watermark)) {
+                log.info("copilot backup has not completed yet, skip archiving copilots");
+                copilotCutoff = null;
+            } else if (watermark.isBefore(copilotCutoff)) {
+                copilotCutoff = watermark;
+            }
+        }
+        if (copilotCutoff != null) {
+            int copilots = archiveCollection(mongoTemplate.getCollectionName(Copilot.class), copilotCutoff,
+                    archive.getBatchSize(), batch -> batch, this::archiveCopilotContents);
+            log.info("archived {} deleted copilots deleted before {}", copilots, copilotCutoff);
+        }
+        int comments = archiveCollection(mongoTemplate.getCollectionName(CommentsArea.class), cutoff,
+                archive.getBatchSize(), this::selectUnreferencedComments, null);
+        log.info("archived {} deleted comments deleted before {}", comments, cutoff);
+    }
+
+    /**
+     * 分批将删除时间早于 cutoff 的文档复制到归档集合后从原集合移除 <br>
+     * 归档集合以 _id 覆盖写入，中途失败重跑也不会产生重复文档
+     *
+     * @param selector  从每批文档中选出可以归档的部分，未选中的留在原集合，下次执行时重新判断
+     * @param afterCopy 每批复制完成、从原集合移除之前执行
+     * @return 归档的文档数
+     */
+    private int archiveCollection(String collection, LocalDateTime cutoff, int batchSize,
+                                  UnaryOperator<List<Document>> selector,
+                                  @Nullable Consumer<List<Document>> afterCopy) {
+        String archiveCollection = collection + ARCHIVE_SUFFIX;
+        Criteria deleted = Criteria.where("delete").is(true).and("deleteTime").lt(cutoff);
+        int total = 0;
+        Document last = null;
+        while (true) {
+            // 按 (deleteTime, _id) 翻页，留在原集合的文档不会被重复读取
+            Query query = Query.query(deleted)
+                    .with(Sort.by("deleteTime", "_id"))
+                    .limit(batchSize);
+            if (last != null) {
+                query.addCriteria(new Criteria().orOperator(
+                        Criteria.where("deleteTime").gt(last.get("deleteTime")),
+                        Criteria.where("deleteTime").is(last.get("deleteTime")).and("_id").gt(last.get("_id"))));
+            }
+            List<Document> fetched = mongoTemplate.find(query, Document.class, collection);
+            if (fetched.isEmpty()) {
+                break;
+            }
+            last = fetched.get(fetched.size() - 1);
+            List<Document> batch = selector.apply(fetched);
+            if (batch.isEmpty()) {
+                if (fetched.size() < batchSize) {
+                    break;
+                }
+                continue;
+            }
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, archiveCollection);
+            for (Document document : batch) {
+                bulk.replaceOne(Query.query(Criteria.where("_id").is(document.get("_id"))), document,
+                        FindAndReplaceOptions.options().upsert());
+            }
+            bulk.execute();
+            if (afterCopy != null) {
+                afterCopy.accept(batch);
+            }
+            List<Object> ids = batch.stream().map(document -> document.get("_id")).toList();
+            // 再次带上删除条件，避免移除期间被恢复的数据
+            mongoTemplate.remove(Query.query(Criteria.where("_id").in(ids).and("delete").is(true)), collection);
+            total += batch.size();
+            if (fetched.size() < batchSize) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 选出可以归档的已删除评论：没有未删除的评论以其为主评论或回复对象，
+     * 且自身是主评论或其主评论已删除，否则评论区仍需要以占位的形式展示它
+     */
+    private List<Document> selectUnreferencedComments(List<Document> comments) {
+        Set<String> ids = new HashSet<>();
+        Set<String> mainIds = new HashSet<>();
+        for (Document comment : comments) {
+            ids.add(comment.get("_id").toString());
+            String mainCommentId = comment.getString("mainCommentId");
+            if (mainCommentId != null) {
+                mainIds.add(mainCommentId);
+            }
+        }
+
+        // 未删除的主评论
+        Query mainQuery = Query.query(Criteria.where("_id").in(mainIds).and("delete").is(false));
+        mainQuery.fields().include("_id");
+        Set<String> liveMains = mongoTemplate.find(mainQuery, CommentsArea.class).stream()
+                .map(CommentsArea::getId)
+                .collect(Collectors.toSet());
+
+        // 回复总是与被回复的评论属于同一个主评论，按主评论即可找到所有可能引用本批评论的回复
+        Set<String> threads = new HashSet<>(ids);
+        threads.addAll(mainIds);
+        Query replyQuery = Query.query(Criteria.where("mainCommentId").in(threads).and("delete").is(false));
+        replyQuery.fields().include("mainCommentId", "fromCommentId");
+        Set<String> referenced = new HashSet<>();
+        for (CommentsArea reply : mongoTemplate.find(replyQuery, CommentsArea.class)) {
+            referenced.add(reply.getMainCommentId());
+            if (reply.getFromCommentId() != null) {
+                referenced.add(reply.getFromCommentId());
+            }
+        }
+
+        return comments.stream()
+                .filter(comment -> !referenced.contains(comment.get("_id").toString()))
+                .filter(comment -> !liveMains.contains(comment.getString("mainCommentId")))
+                .toList();
+    }
+
+    /**
+     * 作业的原始数据随作业一起归档
+     */
+    private void archiveCopilotContents(List<Document> copilots) {
+        List<Object> copilotIds = copilots.stream()
+                .map(document -> document.get("copilotId"))
+                .filter(Objects::nonNull)
+                .toList();
+        if (copilotIds.isEmpty()) {
+            return;
+        }
+        String collection = mongoTemplate.getCollectionName(CopilotContent.class);
+        Query query = Query.query(Criteria.where("_id").in(copilotIds));
+        List<Document> contents = mongoTemplate.find(query, Document.class, collection);
+        if (!contents.isEmpty()) {
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED,
+                    collection + ARCHIVE_SUFFIX);
+            for (Document content : contents) {
+                bulk.replaceOne(Query.query(Criteria.where("_id").is(content.get("_id"))), content,
+                        FindAndReplaceOptions.options().upsert());
+            }
+            bulk.execute();
+        }
+        mongoTemplate.remove(query, collection);
+    }
+}
@@ -0,0 +1,6 @@
+-- 登记新的 refresh token id，KEYS[1] 为用户的 token 集合，ARGV[1] 为 token id，ARGV[2] 为最多保留的数量，ARGV[3] 为过期秒数
+local time = redis.call('TIME')
+redis.call('ZADD', KEYS[1], tonumber(time[1]) * 1000000 + tonumber(time[2]), ARGV[1])
+-- 只保留最新的若干个
+redis.call('ZREMRANGEBYRANK', KEYS[1], 0, -tonumber(ARGV[2]) - 1)
+redis.call('EXPIRE', KEYS[1], ARGV[3])
@@ -0,0 +1,9 @@
+-- 将旧的 refresh token id 替换为新的，KEYS[1] 为用户的 token 集合，ARGV[1] 为旧 id，ARGV[2] 为新 id，ARGV[3] 为过期秒数
+-- 旧 id 不存在（已被使用、已注销或已过期）时返回 false
+if redis.call('ZREM', KEYS[1], ARGV[1]) == 0 then
+    return false
+end
+local time = redis.call('TIME')
+redis.call('ZADD', KEYS[1], tonumber(time[1]) * 1000000 + tonumber(time[2]), ARGV[2])
+redis.call('EXPIRE', KEYS[1], ARGV[3])
+return true
@@ -0,0 +1,29 @@
+-- 令牌桶，KEYS[1] 为桶的 key，ARGV[1] 为容量，ARGV[2] 为从空桶补满所需的毫秒数，ARGV[3] 为申请的令牌数
+-- 返回 {实际获得的令牌数, 未获得任何令牌时距离下一个令牌可用的毫秒数}
+local capacity = tonumber(ARGV[1])
+local period = tonumber(ARGV[2])
+local requested = tonumber(ARGV[3])
+-- 统一使用 redis 的时间，避免各节点时钟不一致
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local bucket = redis.call('HMGET', KEYS[1], 'tokens', 'ts')
+local tokens = tonumber(bucket[1])
+local ts = tonumber(bucket[2])
+if tokens == nil or ts == nil then
+    tokens = capacity
+    ts = now
+end
+if now > ts then
+    tokens = math.min(capacity, tokens + (now - ts) * capacity / period)
+    ts = now
+end
+local granted = math.min(requested, math.floor(tokens))
+tokens = tokens - granted
+redis.call('HSET', KEYS[1], 'tokens', tostring(tokens), 'ts', tostring(ts))
+-- 空桶经过 period 后必然补满，与不存在等价
+redis.call('PEXPIRE', KEYS[1], period)
+local retryAfter = 0
+if granted == 0 then
+    retryAfter = math.ceil((1 - tokens) * period / capacity)
+end
+return {granted, retryAfter}
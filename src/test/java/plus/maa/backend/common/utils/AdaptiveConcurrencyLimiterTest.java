@@ -0,0 +1,64 @@
+package plus.maa.backend.common.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    @Test
+    void rejectsAboveLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(3, 1, 10, 2.0);
+        assertEquals(1, limiter.tryAcquire());
+        assertEquals(2, limiter.tryAcquire());
+        assertEquals(3, limiter.tryAcquire());
+        assertEquals(-1, limiter.tryAcquire());
+        limiter.release(1_000_000, 3);
+        assertTrue(limiter.tryAcquire() > 0);
+    }
+
+    @Test
+    void limitConvergesUnderOverload() {
+        // 模拟容量为 10 的下游：并发超过 10 后延迟线性增长，上限从下游容量开始，之后请求量始终打满上限
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 2, 200, 2.0);
+        int maxLimit = 0;
+        for (int i = 0; i < 5000; i++) {
+            int limit = limiter.getLimit();
+            if (i >= 4000) {
+                maxLimit = Math.max(maxLimit, limit);
+            }
+            limiter.tryAcquire();
+            limiter.release((long) (10_000_000L * Math.max(1.0, limit / 10.0)), limit);
+        }
+        // 延迟保持在无负载延迟的数倍以内，而不是无限排队
+        assertTrue(maxLimit <= 40, "limit: " + maxLimit);
+
+        // 延迟恢复后上限重新增长
+        maxLimit = 0;
+        for (int i = 0; i < 2000; i++) {
+            int limit = limiter.getLimit();
+            maxLimit = Math.max(maxLimit, limit);
+            limiter.tryAcquire();
+            limiter.release(10_000_000L, limit);
+        }
+        assertTrue(maxLimit > 100, "limit: " + maxLimit);
+    }
+
+    @Test
+    void steadyLoadIsNeverRejected() {
+        // 稳定的 8 个并发请求，延迟在 8ms 到 12ms 之间波动，下游没有过载
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 4, 200, 2.0);
+        Random random = new Random(42);
+        for (int i = 0; i < 8; i++) {
+            assertTrue(limiter.tryAcquire() > 0);
+        }
+        for (int i = 0; i < 20000; i++) {
+            limiter.release(8_000_000L + random.nextInt(4_000_000), 8);
+            assertTrue(limiter.tryAcquire() > 0, "rejected at sample " + i + ", limit: " + limiter.getLimit());
+        }
+        assertTrue(limiter.getLimit() >= 8, "limit: " + limiter.getLimit());
+    }
+}
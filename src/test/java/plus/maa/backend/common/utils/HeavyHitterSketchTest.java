@@ -0,0 +1,71 @@
+package plus.maa.backend.common.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HeavyHitterSketchTest {
+
+    @Test
+    void findsHeavyHittersAmongManyKeys() {
+        long now = System.currentTimeMillis();
+        HeavyHitterSketch sketch = new HeavyHitterSketch(4, 2048, 60_000, 6, 3);
+        Random random = new Random(1);
+        for (int i = 0; i < 50_000; i++) {
+            sketch.add("ip" + random.nextInt(20_000), now);
+        }
+        for (int k = 0; k < 3; k++) {
+            for (int i = 0; i < 1000 * (k + 1); i++) {
+                sketch.add("heavy" + k, now);
+            }
+        }
+
+        List<HeavyHitterSketch.Entry> top = sketch.top(now);
+        assertEquals(List.of("heavy2", "heavy1", "heavy0"), top.stream().map(HeavyHitterSketch.Entry::key).toList());
+        // 估计值只会偏大
+        long estimate = sketch.estimate("heavy2", now);
+        assertTrue(estimate >= 3000 && estimate < 3100, "estimate: " + estimate);
+        assertTrue(sketch.estimate("nobody", now) < 100);
+    }
+
+    @Test
+    void countsExpireWithWindow() {
+        long now = System.currentTimeMillis();
+        HeavyHitterSketch sketch = new HeavyHitterSketch(4, 256, 60_000, 6, 3);
+        for (int i = 0; i < 100; i++) {
+            sketch.add("a", now);
+        }
+        assertEquals(100, sketch.estimate("a", now + 30_000));
+        assertEquals(0, sketch.estimate("a", now + 70_000));
+        assertTrue(sketch.top(now + 70_000).isEmpty());
+    }
+
+    @Test
+    void admissionThresholdRisesOnceCandidatesAreFull() {
+        long now = System.currentTimeMillis();
+        HeavyHitterSketch sketch = new HeavyHitterSketch(4, 1024, 60_000, 6, 3);
+        for (int i = 0; i < 5; i++) {
+            sketch.add("a", now);
+            sketch.add("b", now);
+        }
+        assertEquals(0, sketch.getAdmissionThreshold());
+
+        // 候选填满后即按最小的候选设置门槛，不必等到淘汰或子窗口轮转
+        sketch.add("c", now);
+        assertEquals(1, sketch.getAdmissionThreshold());
+
+        // 已在候选中的 key 不刷新记录的值，淘汰前再按计数器刷新，"d" 无法挤掉实际更多的 "c"
+        for (int i = 0; i < 4; i++) {
+            sketch.add("c", now);
+        }
+        sketch.add("d", now);
+        sketch.add("d", now);
+        assertEquals(5, sketch.getAdmissionThreshold());
+        assertEquals(List.of("a", "b", "c"), sketch.top(now).stream().map(HeavyHitterSketch.Entry::key)
+                .sorted().toList());
+    }
+}
@@ -0,0 +1,72 @@
+package plus.maa.backend.common.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InFlightCoalescerTest {
+
+    @Test
+    void concurrentCallsShareOneLoad() throws Exception {
+        InFlightCoalescer<String, Integer> coalescer = new InFlightCoalescer<>();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Future<Integer> first = executor.submit(() -> coalescer.execute("k", () -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                awaitQuietly(release);
+                return 42;
+            }));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+            List<Future<Integer>> others = new ArrayList<>();
+            for (int i = 0; i < 7; i++) {
+                others.add(executor.submit(() -> coalescer.execute("k", loads::incrementAndGet)));
+            }
+            // 等待其余调用者进入等待状态
+            Thread.sleep(100);
+            release.countDown();
+
+            assertEquals(42, first.get(5, TimeUnit.SECONDS));
+            for (Future<Integer> other : others) {
+                assertEquals(42, other.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // 完成后不缓存结果
+        assertEquals(7, coalescer.execute("k", () -> 7));
+    }
+
+    @Test
+    void failureIsRethrown() {
+        InFlightCoalescer<String, Integer> coalescer = new InFlightCoalescer<>();
+        assertThrows(IllegalStateException.class, () -> coalescer.execute("k", () -> {
+            throw new IllegalStateException();
+        }));
+        assertEquals(1, coalescer.execute("k", () -> 1));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
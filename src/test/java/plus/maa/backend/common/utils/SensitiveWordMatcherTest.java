@@ -0,0 +1,49 @@
+package plus.maa.backend.common.utils;
+
+import cn.hutool.dfa.WordTree;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+class SensitiveWordMatcherTest {
+
+    @Test
+    void matchOverlappingWords() {
+        var matcher = SensitiveWordMatcher.build(List.of("he", "she", "his", "hers"));
+
+        Assertions.assertEquals(List.of("she", "he", "hers"), matcher.matchAll("ushers"));
+        Assertions.assertTrue(matcher.containsAny("this"));
+        Assertions.assertFalse(matcher.containsAny("nothing"));
+        Assertions.assertTrue(matcher.matchAll("nothing").isEmpty());
+    }
+
+    @Test
+    void ignoreStopCharsAndBlankWords() {
+        var matcher = SensitiveWordMatcher.build(List.of("", "  ", "敏感 词"));
+
+        Assertions.assertEquals(1, matcher.size());
+        Assertions.assertEquals(List.of("敏感词"), matcher.matchAll("这里有 敏 感，词"));
+    }
+
+    @Test
+    void consistentWithWordTree() {
+        var words = List.of("ab", "bc", "abcd", "cd", "d", "测试", "试用");
+        var matcher = SensitiveWordMatcher.build(words);
+        var wordTree = new WordTree();
+        wordTree.addWords(words);
+
+        for (String text : List.of("abcd", "xbcx", "zzz", "测试用例", "a b c")) {
+            Set<String> expected = new HashSet<>();
+            for (String word : words) {
+                if (text.replace(" ", "").contains(word)) {
+                    expected.add(word);
+                }
+            }
+            Assertions.assertEquals(expected, new HashSet<>(matcher.matchAll(text)), text);
+            Assertions.assertEquals(wordTree.isMatch(text), matcher.containsAny(text), text);
+        }
+    }
+}
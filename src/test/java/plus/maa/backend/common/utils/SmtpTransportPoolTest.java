@@ -0,0 +1,158 @@
+package plus.maa.backend.common.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SmtpTransportPoolTest {
+
+    private FakeSmtpServer server;
+    private SmtpTransportPool pool;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new FakeSmtpServer();
+        Properties props = new Properties();
+        props.setProperty("mail.smtp.timeout", "5000");
+        props.setProperty("mail.smtp.connectiontimeout", "5000");
+        pool = new SmtpTransportPool(Session.getInstance(props), "127.0.0.1", server.getPort(),
+                null, null, 2, 60_000);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        pool.close();
+        server.close();
+    }
+
+    @Test
+    void reusesConnectionAcrossMessages() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            pool.send(message("user" + i + "@localhost"));
+        }
+        assertEquals(3, server.messages.get());
+        assertEquals(1, server.connections.get());
+    }
+
+    @Test
+    void reconnectsWhenServerClosesConnection() throws Exception {
+        server.dropAfterMessage = true;
+        pool.send(message("a@localhost"));
+        pool.send(message("b@localhost"));
+        assertEquals(2, server.messages.get());
+        assertEquals(2, server.connections.get());
+    }
+
+    @Test
+    void rejectedRecipientKeepsConnection() throws Exception {
+        assertThrows(SendFailedException.class, () -> pool.send(message("rejected@localhost")));
+        pool.send(message("a@localhost"));
+        assertEquals(1, server.messages.get());
+        assertEquals(1, server.connections.get());
+    }
+
+    private MimeMessage message(String to) throws MessagingException {
+        MimeMessage message = pool.createMessage();
+        message.setFrom(new InternetAddress("maa@localhost"));
+        message.setRecipient(MimeMessage.RecipientType.TO, new InternetAddress(to));
+        message.setSubject("test", StandardCharsets.UTF_8.name());
+        message.setText("hello", StandardCharsets.UTF_8.name());
+        return message;
+    }
+
+    /**
+     * 只实现发送所需命令的本地 SMTP 服务，地址包含 rejected 的收件人会被拒绝
+     */
+    private static final class FakeSmtpServer implements AutoCloseable {
+        private final ServerSocket serverSocket;
+        private final AtomicInteger connections = new AtomicInteger();
+        private final AtomicInteger messages = new AtomicInteger();
+        private volatile boolean dropAfterMessage;
+
+        private FakeSmtpServer() throws IOException {
+            serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            Thread acceptor = new Thread(() -> {
+                while (!serverSocket.isClosed()) {
+                    try {
+                        Socket socket = serverSocket.accept();
+                        connections.incrementAndGet();
+                        Thread handler = new Thread(() -> handle(socket));
+                        handler.setDaemon(true);
+                        handler.start();
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        private int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        private void handle(Socket socket) {
+            try (socket;
+                 BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+                 PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.US_ASCII)) {
+                reply(out, "220 localhost ESMTP");
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String command = line.length() < 4 ? line : line.substring(0, 4).toUpperCase();
+                    switch (command) {
+                        case "EHLO", "HELO", "MAIL", "RSET", "NOOP" -> reply(out, "250 OK");
+                        case "RCPT" -> reply(out, line.contains("rejected") ? "550 no such user" : "250 OK");
+                        case "DATA" -> {
+                            reply(out, "354 end with <CRLF>.<CRLF>");
+                            while ((line = in.readLine()) != null && !line.equals(".")) {
+                                // 丢弃正文
+                            }
+                            messages.incrementAndGet();
+                            reply(out, "250 OK");
+                            if (dropAfterMessage) {
+                                return;
+                            }
+                        }
+                        case "QUIT" -> {
+                            reply(out, "221 bye");
+                            return;
+                        }
+                        default -> reply(out, "500 unknown command");
+                    }
+                }
+            } catch (IOException ignored) {
+                // 客户端断开
+            }
+        }
+
+        private static void reply(PrintWriter out, String line) {
+            out.print(line + "\r\n");
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package plus.maa.backend.repository;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.MongoDBContainer;
+import plus.maa.backend.config.MongoIndexVerifier;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 查询计划回归测试，确认主要查询都能命中索引而不是全表扫描 <br>
+ * 默认通过 Testcontainers 启动临时的 mongod，没有 Docker 时跳过；
+ * 也可以设置环境变量 MAA_EXPLAIN_MONGO_URI（如 mongodb://localhost/maa_explain_test）使用已有的 mongod，
+ * 测试结束会删除该数据库
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class IndexExplainTest {
+
+    private static final String MONGO_IMAGE = "mongo:6.0";
+
+    private MongoDBContainer container;
+    private MongoClient client;
+    private MongoTemplate template;
+
+    @BeforeAll
+    void setup() {
+        String uri = System.getenv("MAA_EXPLAIN_MONGO_URI");
+        if (uri == null || uri.isBlank()) {
+            Assumptions.assumeTrue(DockerClientFactory.instance().isDockerAvailable(),
+                    "Docker is not available and MAA_EXPLAIN_MONGO_URI is not set");
+            container = new MongoDBContainer(MONGO_IMAGE);
+            container.start();
+            uri = container.getReplicaSetUrl("maa_explain_test");
+        }
+        client = MongoClients.create(uri);
+        template = new MongoTemplate(client, new ConnectionString(uri).getDatabase());
+        template.getDb().drop();
+
+        // 与应用使用同样的方式从实体注解解析索引
+        MongoMappingContext context = new MongoMappingContext();
+        context.setAutoIndexCreation(true);
+        MongoPersistentEntityIndexResolver resolver = new MongoPersistentEntityIndexResolver(context);
+        for (Class<?> entity : MongoIndexVerifier.INDEXED_ENTITIES) {
+            IndexOperations indexOps = template.indexOps(entity);
+            resolver.resolveIndexFor(entity).forEach(indexOps::ensureIndex);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        for (long i = 0; i < 20; i++) {
+            template.getCollection("maa_copilot").insertOne(new Document("copilotId", 20000 + i)
+                    .append("stageName", "main_01-07").append("uploaderId", "u" + i % 3)
+                    .append("views", i).append("hotScore", (double) i).append("delete", i % 5 == 0)
+                    .append("uploadTime", now.minusDays(i)));
+            template.getCollection("maa_comments_area").insertOne(new Document("copilotId", 20000 + i % 4)
+                    .append("uploaderId", "u" + i % 3).append("likeCount", i).append("topping", false)
+                    .append("delete", false).append("uploadTime", now.minusHours(i))
+                    .append("mainCommentId", i % 2 == 0 ? null : "c" + i));
+            template.getCollection("maa_rating").insertOne(new Document("type", "COPILOT")
+                    .append("key", Long.toString(20000 + i % 4)).append("userId", "u" + i)
+                    .append("rating", i % 3 == 0 ? "DISLIKE" : "LIKE").append("rateTime", now.minusDays(i)));
+            template.getCollection("maa_mail_outbox").insertOne(new Document("to", "u" + i + "@example.com")
+                    .append("priority", (int) (i % 2)).append("status", i % 7 == 0 ? "FAILED" : "PENDING")
+                    .append("nextAttemptTime", now.minusMinutes(i)));
+            template.getCollection("maa_comment_notification_digest").insertOne(new Document("_id", "u" + i)
+                    .append("count", i + 1).append("sendTime", now.minusMinutes(10 - i)));
+            template.getCollection("maa_upload_file").insertOne(new Document("fileId", new ObjectId())
+                    .append("typeLower", "rec").append("classificationLower", "c" + i % 3)
+                    .append("labelLower", "l" + i % 4).append("version", "v4." + i % 2)
+                    .append("uploadDate", now.minusDays(i)));
+        }
+    }
+
+    @AfterAll
+    void cleanup() {
+        if (template != null) {
+            template.getDb().drop();
+        }
+        if (client != null) {
+            client.close();
+        }
+        if (container != null) {
+            container.stop();
+        }
+    }
+
+    @Test
+    void copilotListQueries() {
+        Document notDeleted = new Document("$and", List.of(new Document("delete", false)));
+        assertFindUsesIndex("maa_copilot", notDeleted, new Document("hotScore", -1));
+        assertFindUsesIndex("maa_copilot", notDeleted, new Document("views", -1));
+        assertFindUsesIndex("maa_copilot", notDeleted, new Document("copilotId", -1));
+        assertFindUsesIndex("maa_copilot", new Document("$and", List.of(new Document("delete", false),
+                new Document("uploaderId", "u1"))), new Document("copilotId", -1));
+        assertFindUsesIndex("maa_copilot", new Document("$and", List.of(new Document("delete", false),
+                new Document("stageName", new Document("$in", List.of("main_01-07"))))), new Document("hotScore", -1));
+        assertCountUsesIndex("maa_copilot", notDeleted);
+    }
+
+    @Test
+    void copilotTaskQueries() {
+        // 热度刷新任务分页
+        assertFindUsesIndex("maa_copilot", new Document("delete", false), new Document("copilotId", 1));
+        // 导出
+        assertFindUsesIndex("maa_copilot", new Document("stageName", "main_01-07").append("delete", false), null);
+        // 增量备份
+        LocalDateTime watermark = LocalDateTime.now().minusDays(3);
+        assertFindUsesIndex("maa_copilot", new Document("$or", List.of(
+                new Document("uploadTime", new Document("$gt", watermark)),
+                new Document("deleteTime", new Document("$gt", watermark)))), null);
+        assertFindUsesIndex("maa_copilot", new Document("copilotId", 20001L).append("delete", false), null);
+    }
+
+    @Test
+    void commentQueries() {
+        Document main = new Document("copilotId", 20001L).append("delete", false)
+                .append("mainCommentId", new Document("$exists", false));
+        assertFindUsesIndex("maa_comments_area", main, new Document("topping", -1).append("likeCount", -1));
+        assertFindUsesIndex("maa_comments_area", main, new Document("topping", -1).append("uploadTime", -1));
+        assertFindUsesIndex("maa_comments_area", new Document(main).append("uploaderId", "u1"),
+                new Document("topping", -1).append("likeCount", -1));
+        assertCountUsesIndex("maa_comments_area", main);
+        assertFindUsesIndex("maa_comments_area", new Document("mainCommentId",
+                new Document("$in", List.of("c1", "c3"))), null);
+        assertFindUsesIndex("maa_comments_area", new Document("copilotId",
+                new Document("$in", List.of(20001L, 20002L))).append("delete", false), null);
+        assertCountUsesIndex("maa_comments_area", new Document("copilotId", 20001L).append("delete", false));
+    }
+
+    @Test
+    void archiveQueries() {
+        // 按删除时间分批归档
+        Document deleted = new Document("delete", true)
+                .append("deleteTime", new Document("$lt", LocalDateTime.now().minusDays(30)));
+        assertFindUsesIndex("maa_copilot", deleted, new Document("deleteTime", 1).append("_id", 1));
+        assertFindUsesIndex("maa_comments_area", deleted, new Document("deleteTime", 1).append("_id", 1));
+        // 查找引用待归档评论的回复
+        assertFindUsesIndex("maa_comments_area", new Document("mainCommentId",
+                new Document("$in", List.of("c1", "c3"))).append("delete", false), null);
+    }
+
+    @Test
+    void ratingQueries() {
+        assertFindUsesIndex("maa_rating", new Document("type", "COPILOT").append("key", "20001")
+                .append("userId", "u1"), null);
+        assertCountUsesIndex("maa_rating", new Document("type", "COPILOT").append("key", "20001")
+                .append("rating", "LIKE"));
+        assertFindUsesIndex("maa_rating", new Document("type", "COPILOT")
+                .append("key", new Document("$in", List.of("20001", "20002")))
+                .append("rating", "LIKE")
+                .append("rateTime", new Document("$gte", LocalDateTime.now().minusDays(7))), null);
+    }
+
+    @Test
+    void mailOutboxQueries() {
+        // 领取待发送的邮件
+        assertFindUsesIndex("maa_mail_outbox", new Document("status", "PENDING")
+                        .append("nextAttemptTime", new Document("$lte", LocalDateTime.now())),
+                new Document("priority", 1).append("nextAttemptTime", 1));
+        // 取出到期的评论通知
+        assertFindUsesIndex("maa_comment_notification_digest", new Document("sendTime",
+                new Document("$lte", LocalDateTime.now())), new Document("sendTime", 1));
+    }
+
+    @Test
+    void uploadFileQueries() {
+        assertFindUsesIndex("maa_upload_file", new Document("$and", List.of(new Document("typeLower", "rec"),
+                new Document("classificationLower", "c1"), new Document("version", "v4.1"))), null);
+        assertFindUsesIndex("maa_upload_file", new Document("$and", List.of(new Document("typeLower", "rec"),
+                new Document("labelLower", "l1"))), null);
+        assertFindUsesIndex("maa_upload_file", new Document("uploadDate",
+                new Document("$gte", LocalDateTime.now().minusDays(3))), null);
+    }
+
+    private void assertFindUsesIndex(String collection, Document filter, Document sort) {
+        Document find = new Document("find", collection).append("filter", filter);
+        if (sort != null) {
+            find.append("sort", sort);
+        }
+        assertNoCollScan(find);
+    }
+
+    private void assertCountUsesIndex(String collection, Document filter) {
+        assertNoCollScan(new Document("count", collection).append("query", filter));
+    }
+
+    private void assertNoCollScan(Document command) {
+        Document explain = template.getDb().runCommand(new Document("explain", command)
+                .append("verbosity", "queryPlanner"));
+        Object winningPlan = explain.get("queryPlanner", Document.class).get("winningPlan");
+        Assertions.assertFalse(containsStage(winningPlan, "COLLSCAN"),
+                () -> "query uses COLLSCAN: " + command.toJson() + "\nplan: " + explain.toJson());
+    }
+
+    private static boolean containsStage(Object plan, String stage) {
+        if (plan instanceof Document document) {
+            if (stage.equals(document.get("stage"))) {
+                return true;
+            }
+            return document.values().stream().anyMatch(value -> containsStage(value, stage));
+        }
+        if (plan instanceof List<?> list) {
+            return list.stream().anyMatch(value -> containsStage(value, stage));
+        }
+        return false;
+    }
+}
@@ -0,0 +1,85 @@
+package plus.maa.backend.service;
+
+import org.junit.jupiter.api.Test;
+import plus.maa.backend.config.external.MaaCopilotProperties;
+import plus.maa.backend.repository.RedisCache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AccessLimitServiceTest {
+
+    @Test
+    void leasedTokensAreConsumedLocally() {
+        RedisCache redisCache = mock(RedisCache.class);
+        // 容量 10，按 0.2 的比例每次租借 2 个
+        when(redisCache.acquireTokens(anyString(), eq(10L), anyLong(), eq(2L)))
+                .thenReturn(new long[]{2, 0}, new long[]{2, 0}, new long[]{0, 500});
+        AccessLimitService service = new AccessLimitService(redisCache, new MaaCopilotProperties());
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals(0, service.tryAcquire("k", 10, 60_000));
+        }
+        verify(redisCache, times(2)).acquireTokens(anyString(), anyLong(), anyLong(), anyLong());
+
+        // redis 拒绝后，在下一个令牌可用之前本地直接拒绝
+        assertEquals(500, service.tryAcquire("k", 10, 60_000));
+        assertTrue(service.tryAcquire("k", 10, 60_000) > 0);
+        verify(redisCache, times(3)).acquireTokens(anyString(), anyLong(), anyLong(), anyLong());
+    }
+
+    @Test
+    void localTierCanBeDisabled() {
+        RedisCache redisCache = mock(RedisCache.class);
+        when(redisCache.acquireTokens(anyString(), anyLong(), anyLong(), eq(1L)))
+                .thenReturn(new long[]{1, 0}, new long[]{0, 300});
+        MaaCopilotProperties properties = new MaaCopilotProperties();
+        properties.getRateLimit().setLocalEnabled(false);
+        AccessLimitService service = new AccessLimitService(redisCache, properties);
+
+        assertEquals(0, service.tryAcquire("k", 10, 60_000));
+        assertEquals(300, service.tryAcquire("k", 10, 60_000));
+    }
+
+    @Test
+    void defaultPolicyLeasesMoreThanOneToken() {
+        AccessLimitService service = new AccessLimitService(mock(RedisCache.class), new MaaCopilotProperties());
+        // @AccessLimit 默认 10 秒 3 次
+        assertEquals(2, service.leaseSize(3));
+        assertEquals(1, service.leaseSize(2));
+        assertEquals(1, service.leaseSize(1));
+        assertEquals(20, service.leaseSize(100));
+    }
+
+    @Test
+    void defaultPolicyHitsLocallyAndStaysWithinCapacityAcrossNodes() {
+        // 模拟 redis 中容量为 3、期间不补充的令牌桶，由两个节点共享
+        RedisCache redisCache = mock(RedisCache.class);
+        long[] remaining = {3};
+        when(redisCache.acquireTokens(anyString(), eq(3L), anyLong(), anyLong())).thenAnswer(invocation -> {
+            long granted = Math.min(remaining[0], invocation.getArgument(3, Long.class));
+            remaining[0] -= granted;
+            return new long[]{granted, granted > 0 ? 0 : 10_000};
+        });
+        AccessLimitService first = new AccessLimitService(redisCache, new MaaCopilotProperties());
+        AccessLimitService second = new AccessLimitService(redisCache, new MaaCopilotProperties());
+
+        // 第一个节点租借 2 个令牌，第二次请求在本地放行
+        assertEquals(0, first.tryAcquire("k", 3, 10_000));
+        assertEquals(0, first.tryAcquire("k", 3, 10_000));
+        verify(redisCache, times(1)).acquireTokens(anyString(), anyLong(), anyLong(), anyLong());
+
+        // 第二个节点仍能获得剩余的 1 个令牌，之后两个节点都拒绝
+        assertEquals(0, second.tryAcquire("k", 3, 10_000));
+        assertTrue(second.tryAcquire("k", 3, 10_000) > 0);
+        assertTrue(first.tryAcquire("k", 3, 10_000) > 0);
+        assertEquals(0, remaining[0]);
+    }
+}
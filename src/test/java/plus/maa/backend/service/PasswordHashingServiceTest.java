@@ -0,0 +1,117 @@
+package plus.maa.backend.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import plus.maa.backend.config.external.MaaCopilotProperties;
+import plus.maa.backend.controller.response.PasswordHashingStats;
+import plus.maa.backend.controller.response.ServiceOverloadedException;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PasswordHashingServiceTest {
+
+    // 哈希在 release 之前一直阻塞，模拟线程池被占满
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+
+    private final PasswordEncoder blockingEncoder = new PasswordEncoder() {
+        @Override
+        public String encode(CharSequence rawPassword) {
+            await();
+            return rawPassword.toString();
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            await();
+            return rawPassword.toString().equals(encodedPassword);
+        }
+
+        private void await() {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    };
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        callers.shutdownNow();
+    }
+
+    private PasswordHashingService createService(int queueCapacity, int timeout) {
+        var properties = new MaaCopilotProperties();
+        properties.getPasswordHashing().setThreads(1);
+        properties.getPasswordHashing().setQueueCapacity(queueCapacity);
+        properties.getPasswordHashing().setTimeout(timeout);
+        return new PasswordHashingService(blockingEncoder, properties);
+    }
+
+    @Test
+    void rejectsWhenQueueIsFull() throws Exception {
+        var service = createService(1, 30);
+        // 一个请求占用线程，一个请求排队
+        Future<Boolean> running = callers.submit(() -> service.matches("a", "a"));
+        awaitState(service, 1, 0);
+        Future<Boolean> queued = callers.submit(() -> service.matches("b", "b"));
+        awaitState(service, 1, 1);
+
+        assertThrows(ServiceOverloadedException.class, () -> service.matches("c", "c"));
+        assertEquals(1, service.stats().getRejected());
+
+        // 拒绝不影响已提交的请求
+        release.countDown();
+        assertTrue(running.get(5, TimeUnit.SECONDS));
+        assertTrue(queued.get(5, TimeUnit.SECONDS));
+        assertEquals(2, service.stats().getCompleted());
+    }
+
+    @Test
+    void timesOutWhenHashingTakesTooLong() {
+        var service = createService(1, 1);
+
+        assertThrows(ServiceOverloadedException.class, () -> service.encode("a"));
+        assertEquals(1, service.stats().getTimedOut());
+        assertEquals(0, service.stats().getRejected());
+    }
+
+    @Test
+    void statsAreReadOnly() {
+        var service = createService(1, 30);
+        release.countDown();
+        service.encode("a");
+        service.matches("a", "a");
+
+        PasswordHashingStats first = service.stats();
+        service.logStats();
+        PasswordHashingStats second = service.stats();
+        assertEquals(2, first.getCompleted());
+        assertEquals(first.getCompleted(), second.getCompleted());
+        assertEquals(first.getTotalHashNanos(), second.getTotalHashNanos());
+        assertEquals(first.getMaxHashNanos(), second.getMaxHashNanos());
+    }
+
+    private static void awaitState(PasswordHashingService service, int active, int queued) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            PasswordHashingStats stats = service.stats();
+            if (stats.getActiveThreads() == active && stats.getQueueDepth() == queued) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("thread pool did not reach the expected state");
+    }
+}
@@ -5,7 +5,10 @@ import org.junit.jupiter.api.Test;
 import plus.maa.backend.config.external.Jwt;
 import plus.maa.backend.config.external.MaaCopilotProperties;
 
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
 import java.util.ArrayList;
+import java.util.List;
 
 class JwtServiceTest {
 
@@ -32,6 +35,28 @@ class JwtServiceTest {
         assert parsedToken.isAuthenticated();
     }
 
+    @Test
+    void cachedAuthTokenIsIndependent() throws JwtExpiredException, JwtInvalidException {
+        var service = createService();
+        var token = service.issueAuthToken("some user id", null, List.of(new SimpleGrantedAuthority("1")));
+
+        var first = service.verifyAndParseAuthToken(token.getValue());
+        first.setAuthenticated(false);
+        var second = service.verifyAndParseAuthToken(token.getValue());
+
+        assert first != second;
+        assert second.isAuthenticated();
+        assert "some user id".equals(second.getSubject());
+        Assertions.assertEquals(first.getAuthorities(), second.getAuthorities());
+        Assertions.assertEquals(1, second.getAuthorities().size());
+
+        // 修改副本的权限不影响缓存中的 token
+        second.setAuthorities(List.of(new SimpleGrantedAuthority("1"), new SimpleGrantedAuthority("2")));
+        var third = service.verifyAndParseAuthToken(token.getValue());
+        Assertions.assertEquals(1, third.getAuthorities().size());
+        Assertions.assertEquals(1, first.getAuthorities().size());
+    }
+
     @Test
     void refreshTokenCodec() throws JwtExpiredException, JwtInvalidException {
         var service = createService();